@@ -22,6 +22,7 @@ import frc.robot.abstract_classes.PIDConstants;
  */
 public final class Constants {
   public static boolean is_debug = true;
+  /** The period of the drive loop, registered as a 200 Hz task in the {@link frc.robot.utils.PeriodicTaskScheduler}. */
   public static double kFastLoopTime = 0.005;
 
   public static class OperatorConstants {
@@ -48,23 +49,90 @@ public final class Constants {
     public static final double kEncoderDistancePerPulse = 0.025;
 
     public static final double kGyroFilterStrenght = 0.98;
+    /** How far back we remember the gyro heading, for lining up old camera frames. */
+    public static final double kHeadingHistorySeconds = 1.5;
+
+    public static class GyroDriftConstants {
+      // Only single tag headings can flip, so only trust headings from more than one tag.
+      public static final int kMinTags = 2;
+      /** Headings from tags further away than this on average are too noisy to take drift out with. */
+      public static final double kMaxTagDistanceMeters = 4;
+      /**
+       * The heading std dev the vision filter gives a multi tag pose from {@link #kMaxTagDistanceMeters} away
+       * on the camera we trust least, anything above it is too far or too blurry.
+       */
+      public static final double kMaxHeadingStdDevRadians = PhotonVisionConstants.VisionFilterConstants.kMultiTagStdDevs[2]
+        * PhotonVisionConstants.WideCamera.kVisionStdDevScale
+        * (1 + kMaxTagDistanceMeters * kMaxTagDistanceMeters / PhotonVisionConstants.VisionFilterConstants.kDistanceScaleMetersSquared);
+      /** Frames taken while turning fast are blurry. */
+      public static final double kMaxRotationRateDegrees = 90;
+      /** How much of the measured drift to take from each frame. */
+      public static final double kCorrectionGain = 0.05;
+      /** The angle offset is never moved faster than this, so heading PIDs don't jump. */
+      public static final double kMaxCorrectionRateDegrees = 2;
+      public static final double kBiasWindowSeconds = 20;
+      public static final int kMinBiasMeasurements = 50;
+      public static final double kBiasGain = 0.5;
+    }
 
-    public static final double kTrackwidthMeters = 70;
+    public static class WheelSlipConstants {
+      /** The encoders and the gyro can disagree this much on how fast we turn before we call it slip. */
+      public static final double kMaxYawRateErrorDegrees = 45;
+      /** The encoders and the accelerometer can disagree this much before we call it slip. */
+      public static final double kMaxAccelErrorMetersPerSecondSquared = 3;
+      /** A hit shows up as a spike in the accelerometer the encoders don't see. */
+      public static final double kCollisionJerkMetersPerSecondCubed = 250;
+      /** Both accelerations are smoothed this much before comparing, the encoders are coarse. */
+      public static final double kAccelSmoothingSeconds = 0.05;
+      /** Keep distrusting the wheels this long after the last sign of slip. */
+      public static final double kHoldSeconds = 0.25;
+      /** How much of the wheel movement goes into the odometry while slipping, the gyro still gives the heading. */
+      public static final double kSlipOdometryWeight = 0.25;
+      /** When we're pushed the wheels don't show where we went at all. */
+      public static final double kCollisionOdometryWeight = 0;
+      /** Vision standard deviations are multiplied by this while the wheels aren't trusted. */
+      public static final double kSlipVisionStdDevScale = 0.5;
+    }
+
+    /** Only used until the drive is characterized, see {@link CharacterizationConstants#kResultsFile}. */
+    public static final double kTrackwidthMeters = 0.7;
     
     public static final double kMaxSpeedMetersPerSecond = 3;
     public static final double kMaxAccelerationMetersPerSecondSquared = 1;
-    
-    public static final double kPDriveVel = 0.05;
+
+    /** The wheel velocity controllers, run every fast loop on top of the feedforward. In volts per meter per second. */
+    public static class VelocityControlConstants {
+      public static final double kP = 0.05;
+      public static final double kI = 0;
+      public static final double kD = 0;
+    }
 
     public static final DifferentialDriveKinematics kDriveKinematics =
         new DifferentialDriveKinematics(kTrackwidthMeters);
+    /** Only used until the drive is characterized, see {@link CharacterizationConstants#kResultsFile}. */
     public static class FeedForwardConstants {
-      //TODO: Tune these values
       public static final double ksVolts = 1.0863;
       public static final double kvVoltSecondsPerMeter = 0.025977;
       public static final double kaVoltSecondsSquaredPerMeter = 0.30616;
+    }
 
-      public static final double kPDriveVel = 8.5;
+    public static class CharacterizationConstants {
+      /** Where the fitted gains are saved, inside the deploy directory. Copy it to src/main/deploy to keep it. */
+      public static final String kResultsFile = "characterization/drive.properties";
+      /** Where the raw samples of the last run are saved, inside the deploy directory. */
+      public static final String kSamplesFile = "characterization/drive_samples.csv";
+      public static final double kQuasistaticRampVoltsPerSecond = 0.5;
+      public static final double kQuasistaticTimeoutSeconds = 14;
+      public static final double kDynamicStepVolts = 6;
+      public static final double kDynamicTimeoutSeconds = 2;
+      public static final double kTrackwidthVolts = 4;
+      public static final double kTrackwidthTimeoutSeconds = 5;
+      /** Time to let the robot stop between tests. */
+      public static final double kRestSeconds = 2;
+      /** 15 seconds of the fast loop per test, longer than any test's timeout. */
+      public static final int kMaxSamples = 3000;
+      /** Samples slower than this are mostly static friction and noise. */
+      public static final double kMinVelocityMetersPerSecond = 0.05;
     }
   }
   
@@ -96,6 +164,44 @@ public final class Constants {
     }
   }
   
+  public static class SensorSamplerConstants {
+    /** How often the DMA engine samples the sensors. */
+    public static final double kSamplePeriodSeconds = 0.001;
+    /** How many samples the DMA engine can hold between reads, 64 ms at 1 kHz. */
+    public static final int kDmaQueueDepth = 64;
+    /** How many samples we keep after reading them. */
+    public static final int kBufferSize = 256;
+  }
+
+  public static class TaskSchedulerConstants {
+    /** How much of each fast loop the tasks can use before the ones that aren't critical get skipped. */
+    public static final double kFrameBudgetFraction = 0.8;
+    /** How many bytes one fast loop can allocate before the tasks that did it are printed. */
+    public static final long kFrameAllocationBudgetBytes = 4 * 1024;
+  }
+
+  public static class LoopProfilerConstants {
+    /** A scheduler loop longer than this is an overrun, the same as the WPILib watchdog. */
+    public static final double kOverrunSeconds = 0.02;
+    /** Print at most one overrun this often, so a slow stretch doesn't flood the console. */
+    public static final double kMinDumpIntervalSeconds = 1;
+    /** How many of the slowest sections to print on an overrun. */
+    public static final int kDumpedSections = 5;
+    /** Count the bytes every section allocates, costs a call into the JVM at every start and stop. */
+    public static final boolean kTrackAllocations = true;
+    /** How many bytes a scheduler loop can allocate before the sections that did it are printed. */
+    public static final long kCycleAllocationBudgetBytes = 32 * 1024;
+  }
+
+  public static class PauseMonitorConstants {
+    /** How many pauses, overruns and missed deadlines are kept per match to match up, the totals are always counted. */
+    public static final int kEventCapacity = 512;
+    /** Compiling at least this long between two polls counts as a JIT burst. */
+    public static final double kCompileBurstSeconds = 0.02;
+    /** How far apart a pause and an overrun can be and still count as overlapping. */
+    public static final double kCorrelationSlackSeconds = 0.002;
+  }
+
   public static class IoConstants {
     public static final int kJoystickPort = 0;
     public static final int X_AXIS = 0;
@@ -116,6 +222,7 @@ public final class Constants {
     public static final String kRamsete = "Ramsete Auto";
     public static final String kEncoder = "Encoder Auto";
     public static final String kPath = "Path Follow Auto";
+    public static final String kCharacterize = "Drive Characterization";
 
     public static class headingPIDConstants {
       public static final double kP = 0.01;
@@ -137,6 +244,22 @@ public final class Constants {
       //Add a high tolorance as we do not try to fix this until we are at the climbing angle
       public static final double kToleranceDegrees = 1.25; 
     }
+
+    public static class AlignConstants {
+      // The middle tag of each alliance's grid, used by the camera auto.
+      public static final int kRedGridTagId = 2;
+      public static final int kBlueGridTagId = 7;
+      /** How far in front of the tag the robot's center stops. */
+      public static final double kScoringDistanceMeters = 0.8;
+      /** Further than this we turn towards the scoring pose, closer we turn to face the tag. */
+      public static final double kTurnToGoalDistanceMeters = 0.15;
+      public static final double kDriveP = 1.2;
+      public static final double kTurnP = 1.5;
+      public static final double kMaxDriveSpeed = 0.5;
+      public static final double kMaxTurnSpeed = 0.5;
+      public static final double kPositionToleranceMeters = 0.05;
+      public static final double kHeadingToleranceDegrees = 2;
+    }
   }
 
   public static class PhotonVisionConstants {
@@ -146,6 +269,47 @@ public final class Constants {
     }
 
     public static final double kTargetArea = 0.5;
+    /** The NetworkTables table PhotonVision publishes every camera's results under. */
+    public static final String kPhotonVisionTableName = "photonvision";
+    /** How many estimated poses we keep around if the drive subsystem doesn't drain them. */
+    public static final int kMaxQueuedPoses = 8;
+    /** The vision thread re-checks for a new frame this often even if no NetworkTables event came in. */
+    public static final double kFramePollTimeoutSeconds = 0.1;
+
+    public static class VisionWorkloadConstants {
+      // The pipeline indexes as set up on the coprocessor, for every camera.
+      public static final int kAprilTagPipeline = 0;
+      public static final int kLowResPipeline = 1;
+      /** This camera streams to the driver in teleop when no command needs it. */
+      public static final String kDriverCamera = Cameras.kWideCamera;
+      public static final double kStatsPeriodSeconds = 1;
+    }
+
+    public static class TrackerConstants {
+      /** Stop following a target if we haven't seen it for this long. */
+      public static final double kTargetTimeoutSeconds = 0.5;
+      // Variances, the process noise is per second.
+      public static final double kAreaProcessNoise = 0.5;
+      public static final double kAreaMeasurementNoise = 0.05;
+    }
+
+    public static class VisionFilterConstants {
+      /** The x (meters), y (meters) and heading (radians) standard deviations of a pose from one tag at 0 meters. */
+      public static final double[] kSingleTagStdDevs = {0.5, 0.5, 4.0};
+      /** The x (meters), y (meters) and heading (radians) standard deviations of a multi tag pose at 0 meters. */
+      public static final double[] kMultiTagStdDevs = {0.15, 0.15, 0.5};
+      /** The standard deviations double when the average tag distance squared reaches this. */
+      public static final double kDistanceScaleMetersSquared = 30;
+      /** Single tag poses with a higher ambiguity than this are thrown away. */
+      public static final double kMaxAmbiguity = 0.2;
+      /** Single tag poses from tags further away than this are thrown away. */
+      public static final double kMaxSingleTagDistanceMeters = 4;
+      /** Single tag poses further than this from where we think we are are thrown away. */
+      public static final double kMaxPoseJumpMeters = 1;
+      /** How far off the field (or up in the air) a pose can be before it is thrown away. */
+      public static final double kFieldMarginMeters = 0.5;
+      public static final double kMaxHeightMeters = 0.5;
+    }
     public static final double TARGET_HEIGHT_METERS = Units.inchesToMeters(15.13);
     
     public static class New_PiCamera implements CameraInterface {
@@ -179,6 +343,11 @@ public final class Constants {
       public PIDConstants getFowardPIDConstants() {
         return new PIDConstants(PiCamera.FowardPIDConstants.kP, PiCamera.FowardPIDConstants.kI, PiCamera.FowardPIDConstants.kD);
       }
+
+      @Override
+      public double getVisionStdDevScale() {
+        return PiCamera.kVisionStdDevScale;
+      }
       
     }
 
@@ -213,6 +382,11 @@ public final class Constants {
       public PIDConstants getFowardPIDConstants() {
         return new PIDConstants(WideCamera.FowardPIDConstants.kP, WideCamera.FowardPIDConstants.kI, WideCamera.FowardPIDConstants.kD);
       }
+
+      @Override
+      public double getVisionStdDevScale() {
+        return WideCamera.kVisionStdDevScale;
+      }
       
     }
 
@@ -222,6 +396,7 @@ public final class Constants {
       public static final Transform3d robotToCam = new Transform3d(
           new Translation3d(0.5, 0.0, 0),
           new Rotation3d(0, 0,0));
+      public static final double kVisionStdDevScale = 1.0;
 
           public static class TurnPIDConstants{
             public static final double kP = 0.05;
@@ -244,6 +419,8 @@ public final class Constants {
       public static final Transform3d robotToCam = new Transform3d(
           new Translation3d(-0.1, kCamera_Height_Meters, 0),
           new Rotation3d(0, Units.degreesToRadians(30), 0));
+      // The webcam has more motion blur, so we trust it a bit less.
+      public static final double kVisionStdDevScale = 1.5;
 
           public static class TurnPIDConstants{
             public static final double kP = 0.02;
@@ -259,4 +436,55 @@ public final class Constants {
     
     
   }
+
+  public static class SimulationConstants {
+    public static class GainTunerConstants {
+      public static final int kDefaultCandidates = 64;
+      public static final long kDefaultSeed = 2023;
+      public static final double kTimeoutSeconds = 10;
+      public static final int kReportCount = 10;
+      // The score is the settle time in seconds plus these times the overshoot and tracking error.
+      public static final double kOvershootWeight = 5;
+      public static final double kTrackingErrorWeight = 1;
+      public static final double kNotSettledPenalty = 100;
+      public static final double kVisionRunSeconds = 5;
+      public static final double kVisionStartDistanceMeters = 2.5;
+      public static final double kVisionStartYawDegrees = 10;
+      public static final double kVisionYawToleranceDegrees = 1;
+      /** The yaw error counted while the camera can't see the target. */
+      public static final double kLostTargetYawDegrees = 30;
+    }
+
+    public static class MonteCarloConstants {
+      public static final int kDefaultTrials = 200;
+      public static final long kDefaultSeed = 2023;
+      public static final double kAutoTimeoutSeconds = 15;
+      public static final double kMaxWheelSlip = 0.1;
+      public static final double kMinBatteryVoltage = 10.5;
+      public static final double kMaxBatteryVoltage = 12.8;
+      public static final double kMaxGyroBiasDegreesPerSecond = 0.5;
+      public static final double kVisionNoiseMeters = 0.05;
+      public static final double kVisionNoiseRadians = 0.02;
+    }
+
+    public static class DrivetrainSimConstants {
+      public static final double kGearing = 10.71;
+      public static final double kWheelRadiusMeters = Units.inchesToMeters(3);
+      public static final int kMotorsPerSide = 2;
+    }
+
+    public static class VisionSimConstants {
+      public static final double kFps = 30;
+      /** The time between a frame being taken and it showing up on NetworkTables. */
+      public static final double kLatencySeconds = 0.035;
+      public static final double kPoseHistorySeconds = 1;
+      public static final double kDiagonalFovDegrees = 70;
+      public static final int kResolutionWidth = 960;
+      public static final int kResolutionHeight = 720;
+      public static final double kMaxRangeMeters = 20;
+      public static final double kMinTargetArea = 0.01;
+      /** The 2023 tags are 6 inches across the black square. */
+      public static final double kTagSizeMeters = Units.inchesToMeters(6);
+    }
+  }
 }
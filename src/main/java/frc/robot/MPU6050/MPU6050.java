@@ -98,7 +98,11 @@ public class MPU6050 implements Gyro{
     private double X_angle_offset;
     private double Y_angle_offset;
 
-    private double rate_offset;
+    // Written by the calibration thread too.
+    private volatile double rate_offset;
+    // Goes up every time the rate offset is changed from outside, so a calibration that was already running doesn't overwrite it.
+    private int rateOffsetVersion;
+    private final Object rateOffsetLock = new Object();
     private double X_rate_offset;
     private double Y_rate_offset;
 
@@ -118,6 +122,11 @@ public class MPU6050 implements Gyro{
     private short fifo_rate;
 
     private boolean was_Connected;
+    // In simulation the Z axis comes from the drivetrain simulation instead of the sensor.
+    private boolean simulated;
+    private double simulatedRawAngleZ;
+    private double simulatedRateZ;
+    private double simulatedAccelX;
     private boolean dmp_loaded;
 
     LinearFilter Xfilter;
@@ -158,6 +167,8 @@ public class MPU6050 implements Gyro{
         dmpInitialize();
 
         LoopTime = 0.005;
+        // So the first update doesn't integrate over the whole time since boot.
+        lastTimestamp = Timer.getFPGATimestamp();
         angle_offset = 0;
         rate_offset = 0;
         X_rate_offset = 0;
@@ -695,7 +706,12 @@ public class MPU6050 implements Gyro{
         
         angleX += rateX * LoopTime;
         angleY += rateY * LoopTime;
-        angleZ += rateZ * LoopTime;
+        if (simulated) {
+            // The simulated angle is the raw one, take the rate offset out of it like the sensor's integration does.
+            angleZ -= rate_offset * LoopTime;
+        } else {
+            angleZ += rateZ * LoopTime;
+        }
     }
     
     /**
@@ -703,7 +719,8 @@ public class MPU6050 implements Gyro{
      * <p>It's important to make sure that the robot is not moving while the calibration is in progress, 
      * this is typically done when the robot is first turned on while it's sitting at rest before the match starts.<p>
      * 
-     * @apiNote The calibration process takes approximately 5 seconds to complete. And is done on another thread
+     * @apiNote The calibration process takes approximately 5 seconds to complete. And is done on another thread.
+     * If the rate offset is set with {@link #setRate_offset(double)} before it's done, that one is kept.
      */
     @Override
     public void calibrate() {
@@ -712,6 +729,10 @@ public class MPU6050 implements Gyro{
             System.out.println("Rate Offset is already not 0");
             return;
         }
+        int startVersion;
+        synchronized (rateOffsetLock) {
+            startVersion = rateOffsetVersion;
+        }
 
         new Thread(() -> {
             double Xoffset = 0;
@@ -729,7 +750,13 @@ public class MPU6050 implements Gyro{
                 ZaccelOffset += getRawAccelZ();
                 Timer.delay(0.01);
             }
-            rate_offset = Zoffset / 500;
+            synchronized (rateOffsetLock) {
+                if (rateOffsetVersion != startVersion) {
+                    System.out.println("Rate Offset was changed while calibrating, keeping it");
+                } else {
+                    rate_offset = Zoffset / 500;
+                }
+            }
             X_rate_offset = Xoffset / 500;
             Y_rate_offset = Yoffset / 500;
             X_Accel_offset = XaccelOffset / 500;
@@ -836,7 +863,7 @@ public class MPU6050 implements Gyro{
      * @return The rate of the sensor in degrees per second.
      */
     public double getRateZ() {
-        return getRawRateZ();
+        return simulated ? simulatedRateZ - rate_offset : getRawRateZ();
     }
 
     
@@ -852,6 +879,15 @@ public class MPU6050 implements Gyro{
         return (readShort(ACCEL_ZOUT_H)/ 16384.0) - Z_Accel_offset ;
     }
     
+    /**
+     * Gets the acceleration of the X (forward) axis without the filter, for spotting sudden hits.
+     * Unlike {@link #getAccelX()} this doesn't step the filter, so it can be called as often as needed.
+     * @return The acceleration in meters per second squared.
+     */
+    public double getUnfilteredAccelX() {
+        return simulated ? simulatedAccelX : getRawAccelX() * 9.80665;
+    }
+
     /**
      * Gets the Acceleration of the sensor.
      * @return The Acceleration of the sensor in meters per second squared.
@@ -893,7 +929,54 @@ public class MPU6050 implements Gyro{
         return angle_offset;
     }
 
+    /**
+     * Sets the Z angle for simulation, after this the Z axis is no longer integrated from the sensor.
+     * The angle and rate offsets still apply like they do on the real sensor,
+     * the rate offset is taken out of the angle every {@link #update()}.
+     * @param angle The raw (before the offsets) angle in degrees, clockwise positive.
+     */
+    public void setSimulatedAngle(double angle) {
+        simulated = true;
+        // Only move by how much the raw angle moved, so the rate offset taken out so far stays out.
+        angleZ += angle - simulatedRawAngleZ;
+        simulatedRawAngleZ = angle;
+    }
+
+    /**
+     * Sets the Z rate for simulation, see {@link #setSimulatedAngle(double)}.
+     * @param rate The raw (before the offset) rate in degrees per second, clockwise positive.
+     */
+    public void setSimulatedRate(double rate) {
+        simulated = true;
+        simulatedRateZ = rate;
+    }
+
+    /**
+     * Sets the X (forward) acceleration for simulation, see {@link #setSimulatedAngle(double)}.
+     * @param accel The acceleration in meters per second squared.
+     */
+    public void setSimulatedAccelX(double accel) {
+        simulated = true;
+        simulatedAccelX = accel;
+    }
+
+    /**
+     * @return The current rate offset of the Z axis in degrees per second.
+     */
     public double getRate_offset() {
         return rate_offset;
     }
+
+    /**
+     * Sets the rate offset of the Z axis, used to take out bias found after calibration.
+     * @apiNote IS DONE AUTOMATICALLY IN {@link #calibrate()}.
+     * @param offset The offset to set in degrees per second.
+     */
+    public void setRate_offset(double offset) {
+        synchronized (rateOffsetLock) {
+            if (offset == rate_offset) return;
+            rate_offset = offset;
+            rateOffsetVersion++;
+        }
+    }
 }
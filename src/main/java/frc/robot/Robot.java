@@ -7,6 +7,9 @@ package frc.robot;
 import edu.wpi.first.wpilibj.TimedRobot;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import frc.robot.subsystems.AprilTagFieldCache;
+import frc.robot.utils.LoopProfiler;
+import frc.robot.utils.PauseMonitor;
 
 /**
  * The VM is configured to automatically run this class, and to call the functions corresponding to
@@ -19,11 +22,21 @@ public class Robot extends TimedRobot {
 
   private RobotContainer robotContainer;
 
+  // A match is autonomous and teleop together, with the robot disabled in between.
+  private boolean autonomousRan;
+  private boolean teleopRan;
+
   public Robot() {
+    // Start parsing the AprilTag layout first, it loads while the rest of the robot is made.
+    // Nothing here waits for it, the cameras make their pose estimators once it's done.
+    AprilTagFieldCache.preload();
+    // Start listening to the garbage collector before anything allocates much.
+    PauseMonitor.install();
     // Instantiate our RobotContainer.  This will perform all our button bindings, and put our
     // autonomous chooser on the dashboard.
     robotContainer = new RobotContainer();
-    addPeriodic(robotContainer::fastPeriodic, Constants.kFastLoopTime); // add a faster periodic loop that presumably runs the PID loops.
+    // Runs the control, telemetry and housekeeping tasks the container registered, each at its own rate.
+    addPeriodic(robotContainer::fastPeriodic, robotContainer.getFastPeriodSeconds());
   }
 
   
@@ -50,13 +63,20 @@ public class Robot extends TimedRobot {
     // commands, running already-scheduled commands, removing finished or interrupted commands,
     // and running subsystem periodic() methods.  This must be called from the robot's periodic
     // block in order for anything in the Command-based framework to work.
+    LoopProfiler.startCycle();
     CommandScheduler.getInstance().run();
+    LoopProfiler.endCycle();
   }
 
   /** This function is called once each time the robot enters Disabled mode. */
   @Override
   public void disabledInit() {
-    // we don't need to do anything here, but we need to override the method
+    // Print how much of the match went to GC and JIT pauses once teleop is over,
+    // not in the gap between autonomous and teleop.
+    if (teleopRan) {
+      PauseMonitor.reportMatch();
+      teleopRan = false;
+    }
   }
 
   @Override
@@ -67,6 +87,8 @@ public class Robot extends TimedRobot {
   /** This autonomous runs the autonomous command selected by your {@link RobotContainer} class. */
   @Override
   public void autonomousInit() {
+    PauseMonitor.startMatch();
+    autonomousRan = true;
     autonomousCommand = robotContainer.getAutonomousCommand();
 
     // schedule the autonomous command (example)
@@ -87,6 +109,12 @@ public class Robot extends TimedRobot {
 
   @Override
   public void teleopInit() {
+    // Teleop right after autonomous is the same match.
+    if (!autonomousRan) {
+      PauseMonitor.startMatch();
+    }
+    autonomousRan = false;
+    teleopRan = true;
     // This makes sure that the autonomous stops running when
     // teleop starts running. If you want the autonomous to
     // continue until interrupted by another command, remove
@@ -123,6 +151,6 @@ public class Robot extends TimedRobot {
   /** This function is called periodically whilst in simulation. */
   @Override
   public void simulationPeriodic() {
-    // we don't need to do anything here, but we need to override the method
+    robotContainer.simulationPeriodic();
   }
 }
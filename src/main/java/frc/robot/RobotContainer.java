@@ -5,11 +5,13 @@
 package frc.robot;
 
 
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Optional;
+
+import com.pathplanner.lib.PathPlannerTrajectory;
 
-import edu.wpi.first.math.controller.PIDController;
 import edu.wpi.first.math.controller.RamseteController;
-import edu.wpi.first.math.controller.SimpleMotorFeedforward;
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.geometry.Translation2d;
@@ -18,26 +20,32 @@ import edu.wpi.first.math.trajectory.TrajectoryConfig;
 import edu.wpi.first.math.trajectory.TrajectoryGenerator;
 import edu.wpi.first.math.trajectory.constraint.DifferentialDriveVoltageConstraint;
 import edu.wpi.first.net.PortForwarder;
+import edu.wpi.first.networktables.NetworkTableEvent;
+import edu.wpi.first.networktables.NetworkTableInstance;
 import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.Joystick;
-import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.RobotBase;
 import edu.wpi.first.wpilibj.smartdashboard.Field2d;
 import edu.wpi.first.wpilibj.smartdashboard.SendableChooser;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
 import edu.wpi.first.wpilibj2.command.RamseteCommand;
 import edu.wpi.first.wpilibj2.command.SequentialCommandGroup;
 import edu.wpi.first.wpilibj2.command.button.JoystickButton;
 import edu.wpi.first.wpilibj2.command.button.POVButton;
 
 import frc.robot.Constants.AutonomousConstants;
+import frc.robot.Constants.AutonomousConstants.AlignConstants;
 import frc.robot.Constants.DriveConstants;
 import frc.robot.Constants.IntakeConstants;
 import frc.robot.Constants.IoConstants;
 import frc.robot.Constants.OperatorConstants;
 import frc.robot.Constants.PhotonVisionConstants;
 import frc.robot.Constants.VerticalElevatorConstants;
+import frc.robot.commands.AlignToAprilTagCmd;
 import frc.robot.commands.ArcadeDriveCmd;
+import frc.robot.commands.DriveCharacterizationCmd;
 import frc.robot.commands.EncoderDriveCmd;
 import frc.robot.commands.HoldIntakeCmd;
 import frc.robot.commands.IntakeNeoJoystickCmd;
@@ -48,14 +56,25 @@ import frc.robot.commands.TimedIntakeRedlineCmd;
 import frc.robot.commands.VerticalElevatorJoystickCmd;
 import frc.robot.subsystems.DriveSubsystem;
 import frc.robot.subsystems.IntakeArmSubsystem;
-import frc.robot.subsystems.PhotonCameraSystem;
 import frc.robot.subsystems.PneumaticsSubsystem;
 import frc.robot.subsystems.RedlineIntakeSubsystem;
+import frc.robot.subsystems.SensorSampler;
 import frc.robot.subsystems.VerticalElevatorSubsystem;
+import frc.robot.subsystems.VisionWorkloadManager;
+import frc.robot.simulation.SimulationDisturbances;
+import frc.robot.simulation.VisionSim;
+import frc.robot.utils.LoopProfiler;
+import frc.robot.utils.PauseMonitor;
+import frc.robot.utils.PeriodicTaskScheduler;
+import frc.robot.utils.PeriodicTaskScheduler.Priority;
+import frc.robot.utils.PeriodicTaskScheduler.Rate;
+import frc.robot.utils.ProfiledCommand;
+
 
 
+public class RobotContainer implements AutoCloseable {
+  private static final String kCameraChooserName = "Camera choices";
 
-public class RobotContainer {
   private final Field2d field2d = new Field2d();
   // The robot's subsystems and commands are defined here...
   private final DriveSubsystem driveSubsystem = new DriveSubsystem(field2d);
@@ -63,39 +82,131 @@ public class RobotContainer {
   private final IntakeArmSubsystem intakeArmSubsystem = new IntakeArmSubsystem();
   private final RedlineIntakeSubsystem redlineIntakeSubsystem = new RedlineIntakeSubsystem();
   private final PneumaticsSubsystem pneumaticsSubsystem = new PneumaticsSubsystem();
+  private final VisionWorkloadManager visionWorkloadManager = new VisionWorkloadManager(driveSubsystem);
+  private final SensorSampler sensorSampler = new SensorSampler(
+    driveSubsystem.getLeftEncoder(),
+    driveSubsystem.getRightEncoder(),
+    IntakeArmSubsystem.IntakeArmPotInput,
+    verticalElevatorSubsystem.getTopLimitSwitchInput(),
+    verticalElevatorSubsystem.getBottomLimitSwitchInput());
+  private final PeriodicTaskScheduler taskScheduler = new PeriodicTaskScheduler();
 
   private final SendableChooser<String> autoChooser = new SendableChooser<>();
   private final SendableChooser<String> cameraChooser = new SendableChooser<>();
   private final Joystick stick = new Joystick(OperatorConstants.kJoystickPort);
+
+  private VisionSim visionSim;
+  private int cameraChooserListenerHandle;
   
   public RobotContainer() {
-    PortForwarder.add(5800, "photonvision.local", 5800);
+    if (RobotBase.isReal()) {
+      PortForwarder.add(5800, "photonvision.local", 5800);
+    }
+    driveSubsystem.setSensorSampler(sensorSampler);
+    registerPeriodicTasks();
     configureBindings();
     addChoosers();
     setupPhotonVisionCamera();
-    verticalElevatorSubsystem.setDefaultCommand(new VerticalElevatorJoystickCmd(verticalElevatorSubsystem, 0));
-    intakeArmSubsystem.setDefaultCommand(new HoldIntakeCmd(intakeArmSubsystem));
-    driveSubsystem.setDefaultCommand(new ArcadeDriveCmd(driveSubsystem, () -> stick.getRawAxis(IoConstants.Y_AXIS), () -> stick.getRawAxis(IoConstants.Z_AXIS)));
+    if (RobotBase.isSimulation()) {
+      setupSimulation();
+    }
+    verticalElevatorSubsystem.setDefaultCommand(new ProfiledCommand(new VerticalElevatorJoystickCmd(verticalElevatorSubsystem, 0)));
+    intakeArmSubsystem.setDefaultCommand(new ProfiledCommand(new HoldIntakeCmd(intakeArmSubsystem)));
+    driveSubsystem.setDefaultCommand(new ProfiledCommand(new ArcadeDriveCmd(driveSubsystem, () -> stick.getRawAxis(IoConstants.Y_AXIS), () -> stick.getRawAxis(IoConstants.Z_AXIS))));
   }
 
+  private void registerPeriodicTasks() {
+    taskScheduler.register("Drive", Rate.k200Hz, Priority.CRITICAL, () -> {
+      sensorSampler.poll();
+      driveSubsystem.runGyroLoop();
+    });
+    taskScheduler.register("Drive Telemetry", Rate.k10Hz, Priority.LOW, driveSubsystem::publishTelemetry);
+    taskScheduler.register("Task Stats", Rate.k10Hz, Priority.LOW, taskScheduler::publishStats);
+    taskScheduler.register("Loop Profiler", Rate.k1Hz, Priority.LOW, LoopProfiler::publish);
+    taskScheduler.register("Pause Monitor", Rate.k10Hz, Priority.LOW, PauseMonitor::poll);
+  }
+
+  /**
+   * Runs the periodic tasks that are due, call this every {@link #getFastPeriodSeconds()}.
+   */
   public void fastPeriodic() {
-    double first = Timer.getFPGATimestamp();
-    driveSubsystem.runGyroLoop();
-    double timeTook = Timer.getFPGATimestamp() - first;
-    if (timeTook >= 0.1) {
-      DriverStation.reportWarning("Loop Time of 0.01 Overrun, Time Took: " + timeTook, false);
-    } 
+    taskScheduler.run();
+  }
+
+  /**
+   * @return How often {@link #fastPeriodic()} should be called.
+   */
+  public double getFastPeriodSeconds() {
+    return taskScheduler.getPeriodSeconds();
+  }
+
+  /**
+   * @return The scheduler running the tasks faster or slower than the main loop.
+   */
+  public PeriodicTaskScheduler getTaskScheduler() {
+    return taskScheduler;
+  }
+
+  /**
+   * Cancels every command, removes the bindings and frees all the hardware,
+   * so a new RobotContainer can be made in the same program (used by the simulation harness and tests).
+   */
+  @Override
+  public void close() throws Exception {
+    CommandScheduler.getInstance().cancelAll();
+    CommandScheduler.getInstance().getDefaultButtonLoop().clear();
+    NetworkTableInstance.getDefault().removeListener(cameraChooserListenerHandle);
+    visionWorkloadManager.close();
+    driveSubsystem.setSensorSampler(null);
+    sensorSampler.close();
+    driveSubsystem.close();
+    verticalElevatorSubsystem.close();
+    intakeArmSubsystem.close();
+    redlineIntakeSubsystem.close();
+    pneumaticsSubsystem.close();
+  }
+
+  /**
+   * @return The drive subsystem, for the simulation harness and tests.
+   */
+  public DriveSubsystem getDriveSubsystem() {
+    return driveSubsystem;
+  }
+
+  /**
+   * Runs the simulated parts of the robot, called from {@link Robot#simulationPeriodic()}.
+   */
+  public void simulationPeriodic() {
+    visionSim.update();
+  }
+
+  /**
+   * Makes the simulated robot less than perfect, see {@link SimulationDisturbances}.
+   * @param disturbances The disturbances to simulate.
+   */
+  public void setSimulationDisturbances(SimulationDisturbances disturbances) {
+    driveSubsystem.setSimulationDisturbances(disturbances);
+    if (visionSim != null) {
+      visionSim.setPoseNoise(disturbances.visionNoiseMeters, disturbances.visionNoiseRadians, disturbances.seed);
+    }
+  }
+
+  private void setupSimulation() {
+    visionSim = new VisionSim(
+      driveSubsystem::getSimulatedPose,
+      new PhotonVisionConstants.New_PiCamera(),
+      new PhotonVisionConstants.New_WideCamera());
   }
 
   private void configureBindings() {
-    new POVButton(stick, 0).whileTrue(new VerticalElevatorJoystickCmd(verticalElevatorSubsystem, VerticalElevatorConstants.kSpeed).until(verticalElevatorSubsystem.getTopLimitSwitchSupplier()));
-    new POVButton(stick, 180).whileTrue(new VerticalElevatorJoystickCmd(verticalElevatorSubsystem, -VerticalElevatorConstants.kSpeed).until(verticalElevatorSubsystem.getBottomLimitSwitchSupplier()));
-    new JoystickButton(stick, 3).whileTrue(new IntakeNeoJoystickCmd(intakeArmSubsystem, IntakeConstants.kUpSpeed));
-    new JoystickButton(stick, 4).whileTrue(new IntakeNeoJoystickCmd(intakeArmSubsystem, IntakeConstants.kDownSpeed));
-    new JoystickButton(stick, 5).whileTrue(new IntakeRedlineJoystickCmd(redlineIntakeSubsystem, IntakeConstants.kRedlineSpeed));
-    new JoystickButton(stick, 6).whileTrue(new IntakeRedlineJoystickCmd(redlineIntakeSubsystem, -IntakeConstants.kRedlineSpeed));
-    new JoystickButton(stick, 7).whileTrue(new SetSelenoidsCmd(pneumaticsSubsystem, false));
-    new JoystickButton(stick, 8).whileTrue(new SetSelenoidsCmd(pneumaticsSubsystem, true));
+    new POVButton(stick, 0).whileTrue(new ProfiledCommand(new VerticalElevatorJoystickCmd(verticalElevatorSubsystem, VerticalElevatorConstants.kSpeed)).until(verticalElevatorSubsystem.getTopLimitSwitchSupplier()));
+    new POVButton(stick, 180).whileTrue(new ProfiledCommand(new VerticalElevatorJoystickCmd(verticalElevatorSubsystem, -VerticalElevatorConstants.kSpeed)).until(verticalElevatorSubsystem.getBottomLimitSwitchSupplier()));
+    new JoystickButton(stick, 3).whileTrue(new ProfiledCommand(new IntakeNeoJoystickCmd(intakeArmSubsystem, IntakeConstants.kUpSpeed)));
+    new JoystickButton(stick, 4).whileTrue(new ProfiledCommand(new IntakeNeoJoystickCmd(intakeArmSubsystem, IntakeConstants.kDownSpeed)));
+    new JoystickButton(stick, 5).whileTrue(new ProfiledCommand(new IntakeRedlineJoystickCmd(redlineIntakeSubsystem, IntakeConstants.kRedlineSpeed)));
+    new JoystickButton(stick, 6).whileTrue(new ProfiledCommand(new IntakeRedlineJoystickCmd(redlineIntakeSubsystem, -IntakeConstants.kRedlineSpeed)));
+    new JoystickButton(stick, 7).whileTrue(new ProfiledCommand(new SetSelenoidsCmd(pneumaticsSubsystem, false)));
+    new JoystickButton(stick, 8).whileTrue(new ProfiledCommand(new SetSelenoidsCmd(pneumaticsSubsystem, true)));
   }
 
   private void addChoosers() {
@@ -105,30 +216,54 @@ public class RobotContainer {
     autoChooser.addOption("Ramsete Auto", AutonomousConstants.kRamsete);
     autoChooser.addOption("Encoder Drive Auto", AutonomousConstants.kEncoder);
     autoChooser.addOption("Path Follow Auto", AutonomousConstants.kPath);
+    autoChooser.addOption("Drive Characterization", AutonomousConstants.kCharacterize);
     SmartDashboard.putData("Auto choices", autoChooser);
 
     cameraChooser.setDefaultOption("Pi Cam", PhotonVisionConstants.Cameras.kPiCamera);
     cameraChooser.addOption("Wide Cam", PhotonVisionConstants.Cameras.kWideCamera);
-    SmartDashboard.putData("Camera choices", cameraChooser);
+    SmartDashboard.putData(kCameraChooserName, cameraChooser);
 
   }
 
   private void setupPhotonVisionCamera() {
-    String cameraSelected = cameraChooser.getSelected();
-    switch (cameraSelected) {
-      case PhotonVisionConstants.Cameras.kPiCamera:
-        driveSubsystem.setCameraSystem(new PhotonCameraSystem(new PhotonVisionConstants.New_PiCamera()));
-        break;
-      case PhotonVisionConstants.Cameras.kWideCamera:
-        driveSubsystem.setCameraSystem(new PhotonCameraSystem(new PhotonVisionConstants.New_WideCamera()));
-        break;
-      default:
-        DriverStation.reportError("Unknown Camera Selected: " + cameraSelected, false);
+    selectCamera(cameraChooser.getSelected());
+    // Both cameras are already running, so we can switch whenever the chooser changes.
+    var selectedTopic = NetworkTableInstance.getDefault()
+      .getTable("SmartDashboard")
+      .getSubTable(kCameraChooserName)
+      .getStringTopic("selected");
+    cameraChooserListenerHandle = NetworkTableInstance.getDefault().addListener(
+      selectedTopic,
+      EnumSet.of(NetworkTableEvent.Kind.kValueAll),
+      event -> selectCamera(event.valueData.value.getString()));
+  }
+
+  private void selectCamera(String cameraSelected) {
+    if (!driveSubsystem.setActiveCamera(cameraSelected)) {
+      DriverStation.reportError("Unknown Camera Selected: " + cameraSelected, false);
     }
   }
 
   public Command getAutonomousCommand() {
-    switch (autoChooser.getSelected()) {
+    return getAutonomousCommand(autoChooser.getSelected());
+  }
+
+  /**
+   * Gets an autonomous command by name, without looking at the dashboard.
+   * @param autoName One of the names in {@link AutonomousConstants}, unknown names give the timed auto.
+   * @return The command to run in autonomous, null if the routine does nothing.
+   */
+  public Command getAutonomousCommand(String autoName) {
+    var command = createAutonomousCommand(autoName);
+    if (command == null) {
+      return null;
+    }
+    // Autos are mostly groups, so they are profiled under their own name.
+    return new ProfiledCommand(command, "Auto " + autoName);
+  }
+
+  private Command createAutonomousCommand(String autoName) {
+    switch (autoName) {
       case AutonomousConstants.kTimedAuto:
         return timedAuto();
       case AutonomousConstants.kCameraAuto:
@@ -141,11 +276,30 @@ public class RobotContainer {
         return encoderDriveAutoCommand();
       case AutonomousConstants.kPath:
         return pathFollowCommand();
+      case AutonomousConstants.kCharacterize:
+        return DriveCharacterizationCmd.fullRoutine(driveSubsystem);
       default:
         return timedAuto();
     }
   }
   
+  /**
+   * Gets the trajectory an autonomous routine follows, used to measure how well it tracks in simulation.
+   * @param autoName One of the names in {@link AutonomousConstants}.
+   * @return The trajectory, or empty if the routine doesn't follow one.
+   */
+  public Optional<Trajectory> getAutonomousTrajectory(String autoName) {
+    switch (autoName) {
+      case AutonomousConstants.kRamsete:
+        return Optional.of(exampleTrajectory());
+      case AutonomousConstants.kPath:
+        // The path command mirrors the path for the alliance when it starts.
+        return Optional.of(PathPlannerTrajectory.transformTrajectoryForAlliance(DriveSubsystem.loadFowardPath(), DriverStation.getAlliance()));
+      default:
+        return Optional.empty();
+    }
+  }
+
   private Command timedAuto() {
     return new SequentialCommandGroup(
       new TimedIntakeRedlineCmd(redlineIntakeSubsystem, AutonomousConstants.kRedlineSpeed, AutonomousConstants.kRedlineTime),
@@ -154,7 +308,8 @@ public class RobotContainer {
   }
   
   private Command cameraAuto() {
-    return null;
+    int tagId = DriverStation.getAlliance() == DriverStation.Alliance.Red ? AlignConstants.kRedGridTagId : AlignConstants.kBlueGridTagId;
+    return new AlignToAprilTagCmd(driveSubsystem, tagId);
   }
   
   private Command stabilizeAuto() {
@@ -165,13 +320,10 @@ public class RobotContainer {
     return new EncoderDriveCmd(driveSubsystem, AutonomousConstants.kDriveAmount);
   }
 
-  private Command ramseteCommand() {
+  private Trajectory exampleTrajectory() {
     var voltageConstraint = new DifferentialDriveVoltageConstraint(
-      new SimpleMotorFeedforward(
-        DriveConstants.FeedForwardConstants.ksVolts,
-        DriveConstants.FeedForwardConstants.kvVoltSecondsPerMeter,
-        DriveConstants.FeedForwardConstants.kaVoltSecondsSquaredPerMeter), 
-        DriveConstants.kDriveKinematics,
+        driveSubsystem.getFeedforward(),
+        driveSubsystem.getKinematics(),
         8);
     
     TrajectoryConfig config =
@@ -179,11 +331,11 @@ public class RobotContainer {
       DriveConstants.kMaxSpeedMetersPerSecond,
       DriveConstants.kMaxAccelerationMetersPerSecondSquared)
     // Add kinematics to ensure max speed is actually obeyed
-    .setKinematics(DriveConstants.kDriveKinematics)
+    .setKinematics(driveSubsystem.getKinematics())
     // Apply the voltage constraint
     .addConstraint(voltageConstraint);
     
-    Trajectory exampleTrajectory = TrajectoryGenerator.generateTrajectory(
+    return TrajectoryGenerator.generateTrajectory(
       // Start at the origin facing the +X direction
       new Pose2d(0, 0, new Rotation2d(0)),
       // Pass through these two interior waypoints, going foward at 2 m/s
@@ -195,22 +347,19 @@ public class RobotContainer {
       // Pass config
       config
     );
+  }
+
+  private Command ramseteCommand() {
+    Trajectory exampleTrajectory = exampleTrajectory();
     
     RamseteCommand ramseteCommand =
         new RamseteCommand(
             exampleTrajectory,
             driveSubsystem.getPose2dSupplier(),
             new RamseteController(),
-            new SimpleMotorFeedforward(
-                DriveConstants.FeedForwardConstants.ksVolts,
-                DriveConstants.FeedForwardConstants.kvVoltSecondsPerMeter,
-                DriveConstants.FeedForwardConstants.kaVoltSecondsSquaredPerMeter),
-            DriveConstants.kDriveKinematics,
-            driveSubsystem::getWheelSpeeds,
-            new PIDController(DriveConstants.kPDriveVel, 0, 0),
-            new PIDController(DriveConstants.kPDriveVel, 0, 0),
-            // RamseteCommand passes volts to the callback
-            driveSubsystem::setMotorVoltage,
+            driveSubsystem.getKinematics(),
+            // The wheel speeds are held by the drive subsystem in the fast loop.
+            driveSubsystem::setWheelVelocities,
             driveSubsystem);
 
     // Reset odometry to the starting pose of the trajectory.
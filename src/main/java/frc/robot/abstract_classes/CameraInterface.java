@@ -9,4 +9,9 @@ public interface CameraInterface {
     Transform3d getRobotToCam();
     PIDConstants getTurnPIDConstants();
     PIDConstants getFowardPIDConstants();
+    /**
+     * How much less we trust this camera's poses than the others, 1 is the base trust.
+     * The vision standard deviations are multiplied by this, so higher means less trust.
+     */
+    double getVisionStdDevScale();
 }
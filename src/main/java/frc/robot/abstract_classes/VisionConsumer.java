@@ -0,0 +1,12 @@
+package frc.robot.abstract_classes;
+
+/**
+ * Implemented by commands that need the cameras while they run,
+ * so the {@link frc.robot.subsystems.VisionWorkloadManager} can give them the pipeline they need.
+ */
+public interface VisionConsumer {
+    /**
+     * @return The mode every camera should be in while this command is running.
+     */
+    VisionMode getRequiredVisionMode();
+}
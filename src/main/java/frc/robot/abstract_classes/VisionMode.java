@@ -0,0 +1,13 @@
+package frc.robot.abstract_classes;
+
+/**
+ * What a camera's coprocessor pipeline should be doing.
+ */
+public enum VisionMode {
+    /** Full resolution AprilTag detection, the most accurate but the most work. */
+    APRILTAG,
+    /** Low resolution AprilTag detection, enough to keep the pose updated while nobody is aiming. */
+    LOW_RES,
+    /** No processing, just the camera stream for the driver. */
+    DRIVER
+}
@@ -0,0 +1,116 @@
+package frc.robot.commands;
+
+import java.util.Optional;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Transform2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj2.command.CommandBase;
+import frc.robot.Constants.AutonomousConstants.AlignConstants;
+import frc.robot.abstract_classes.VisionConsumer;
+import frc.robot.abstract_classes.VisionMode;
+import frc.robot.subsystems.AprilTagFieldCache;
+import frc.robot.subsystems.DriveSubsystem;
+
+/**
+ * Drives to the scoring pose in front of an AprilTag, using the fused pose of the {@link DriveSubsystem}.
+ * <p>The goal comes from the field layout, not from the camera, so the command keeps driving
+ * when the tag goes out of view and the pose is updated again whenever any camera sees a tag.<p>
+ */
+public class AlignToAprilTagCmd extends CommandBase implements VisionConsumer {
+    private final DriveSubsystem driveSubsystem;
+    private final int tagId;
+    private Pose2d goalPose;
+    private boolean finished;
+
+    /**
+     * @param driveSubsystem The drive subsystem.
+     * @param tagId The fiducial ID of the tag to line up with.
+     */
+    public AlignToAprilTagCmd(DriveSubsystem driveSubsystem, int tagId) {
+        this.driveSubsystem = driveSubsystem;
+        this.tagId = tagId;
+        addRequirements(driveSubsystem);
+    }
+
+    /**
+     * Gets the pose the robot should be at to score on a tag, facing the tag.
+     * @param tagId The fiducial ID of the tag.
+     * @param distanceMeters How far in front of the tag the robot's center should be.
+     * @return The scoring pose, or empty if the tag isn't on the field layout.
+     */
+    public static Optional<Pose2d> getScoringPose(int tagId, double distanceMeters) {
+        AprilTagFieldCache.getLayout();
+        if (!AprilTagFieldCache.hasTag(tagId)) return Optional.empty();
+        var tagPose = new Pose2d(
+            AprilTagFieldCache.getTagX(tagId),
+            AprilTagFieldCache.getTagY(tagId),
+            new Rotation2d(AprilTagFieldCache.getTagYaw(tagId)));
+        // Move out along the way the tag faces, then turn around to face it.
+        return Optional.of(tagPose.transformBy(
+            new Transform2d(new Translation2d(distanceMeters, 0), Rotation2d.fromDegrees(180))));
+    }
+
+    @Override
+    public void initialize() {
+        var scoringPose = getScoringPose(tagId, AlignConstants.kScoringDistanceMeters);
+        finished = scoringPose.isEmpty();
+        if (finished) {
+            DriverStation.reportError("No AprilTag with ID " + tagId + " on the field layout", false);
+            return;
+        }
+        goalPose = scoringPose.get();
+        System.out.println("Align To AprilTag " + tagId + " Started!");
+    }
+
+    @Override
+    public void execute() {
+        if (finished) return;
+        Pose2d pose = driveSubsystem.getEstimatedPose();
+        // The goal as seen from the robot, x is forward and y is left.
+        Translation2d toGoal = goalPose.getTranslation().minus(pose.getTranslation()).rotateBy(pose.getRotation().unaryMinus());
+        double distance = toGoal.getNorm();
+
+        double headingError;
+        double fowardSpeed;
+        if (distance > AlignConstants.kTurnToGoalDistanceMeters) {
+            // Point at the goal, driving backwards if it's behind us.
+            double angleToGoal = Math.atan2(toGoal.getY(), toGoal.getX());
+            headingError = toGoal.getX() >= 0 ? angleToGoal : MathUtil.angleModulus(angleToGoal + Math.PI);
+            // Slow down while we are still turning towards it.
+            fowardSpeed = AlignConstants.kDriveP * toGoal.getX() * Math.max(Math.cos(headingError), 0);
+        } else {
+            // Close enough, just face the tag.
+            headingError = goalPose.getRotation().minus(pose.getRotation()).getRadians();
+            fowardSpeed = AlignConstants.kDriveP * toGoal.getX();
+        }
+        double turnSpeed = AlignConstants.kTurnP * headingError;
+
+        driveSubsystem.drive(
+            MathUtil.clamp(fowardSpeed, -AlignConstants.kMaxDriveSpeed, AlignConstants.kMaxDriveSpeed),
+            MathUtil.clamp(turnSpeed, -AlignConstants.kMaxTurnSpeed, AlignConstants.kMaxTurnSpeed),
+            false);
+
+        finished = distance < AlignConstants.kPositionToleranceMeters
+            && Math.abs(goalPose.getRotation().minus(pose.getRotation()).getDegrees()) < AlignConstants.kHeadingToleranceDegrees;
+    }
+
+    @Override
+    public VisionMode getRequiredVisionMode() {
+        return VisionMode.APRILTAG;
+    }
+
+    @Override
+    public void end(boolean interrupted) {
+        driveSubsystem.stopMotors();
+        System.out.println("Align To AprilTag Finished!");
+    }
+
+    @Override
+    public boolean isFinished() {
+        return finished;
+    }
+}
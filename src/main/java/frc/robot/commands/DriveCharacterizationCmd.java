@@ -0,0 +1,178 @@
+package frc.robot.commands;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.Map;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Filesystem;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.CommandBase;
+import edu.wpi.first.wpilibj2.command.InstantCommand;
+import edu.wpi.first.wpilibj2.command.SequentialCommandGroup;
+import edu.wpi.first.wpilibj2.command.WaitCommand;
+import frc.robot.Constants.DriveConstants.CharacterizationConstants;
+import frc.robot.subsystems.DriveCharacterizationAnalysis;
+import frc.robot.subsystems.DriveCharacterizationLog;
+import frc.robot.subsystems.DriveGains;
+import frc.robot.subsystems.DriveSubsystem;
+
+/**
+ * Runs one drive characterization test, recording the voltage and the encoders every fast loop.
+ * <p>Use {@link #fullRoutine(DriveSubsystem)} to run every test and save the fitted gains.
+ * The robot drives a few meters each way and spins in place, so give it room.<p>
+ */
+public class DriveCharacterizationCmd extends CommandBase {
+    public enum Test {
+        /** Slowly ramps the voltage up so acceleration is near 0, for ks and kv. */
+        QUASISTATIC_FORWARD(1, 1),
+        QUASISTATIC_REVERSE(-1, -1),
+        /** Steps straight to a high voltage, for ka. */
+        DYNAMIC_FORWARD(1, 1),
+        DYNAMIC_REVERSE(-1, -1),
+        /** Spins counterclockwise in place, for the track width. */
+        TRACKWIDTH(-1, 1);
+
+        private final double leftDirection;
+        private final double rightDirection;
+
+        Test(double leftDirection, double rightDirection) {
+            this.leftDirection = leftDirection;
+            this.rightDirection = rightDirection;
+        }
+
+        private double getVolts(double seconds) {
+            switch (this) {
+                case QUASISTATIC_FORWARD:
+                case QUASISTATIC_REVERSE:
+                    return CharacterizationConstants.kQuasistaticRampVoltsPerSecond * seconds;
+                case DYNAMIC_FORWARD:
+                case DYNAMIC_REVERSE:
+                    return CharacterizationConstants.kDynamicStepVolts;
+                default:
+                    return CharacterizationConstants.kTrackwidthVolts;
+            }
+        }
+
+        private double getTimeout() {
+            switch (this) {
+                case QUASISTATIC_FORWARD:
+                case QUASISTATIC_REVERSE:
+                    return CharacterizationConstants.kQuasistaticTimeoutSeconds;
+                case DYNAMIC_FORWARD:
+                case DYNAMIC_REVERSE:
+                    return CharacterizationConstants.kDynamicTimeoutSeconds;
+                default:
+                    return CharacterizationConstants.kTrackwidthTimeoutSeconds;
+            }
+        }
+    }
+
+    private final DriveSubsystem driveSubsystem;
+    private final Test test;
+    private final DriveCharacterizationLog log;
+    private final Timer timer = new Timer();
+
+    /**
+     * Runs a test until the log is full, use {@link Command#withTimeout(double)} to stop it sooner.
+     * @param driveSubsystem The drive subsystem.
+     * @param test The test to run.
+     * @param log Where to record the samples, it is cleared when the test starts.
+     */
+    public DriveCharacterizationCmd(DriveSubsystem driveSubsystem, Test test, DriveCharacterizationLog log) {
+        this.driveSubsystem = driveSubsystem;
+        this.test = test;
+        this.log = log;
+        addRequirements(driveSubsystem);
+    }
+
+    @Override
+    public void initialize() {
+        log.clear();
+        timer.reset();
+        timer.start();
+        driveSubsystem.startCharacterizationLog(log);
+    }
+
+    @Override
+    public void execute() {
+        double volts = test.getVolts(timer.get());
+        driveSubsystem.setMotorVoltage(volts * test.leftDirection, volts * test.rightDirection);
+    }
+
+    @Override
+    public void end(boolean interrupted) {
+        driveSubsystem.stopCharacterizationLog();
+        driveSubsystem.stopMotors();
+        timer.stop();
+    }
+
+    @Override
+    public boolean isFinished() {
+        return log.isFull();
+    }
+
+    /**
+     * Runs every test with a rest in between, then fits the gains and saves them to the deploy directory.
+     * They are used from the next boot, see {@link DriveGains#load()}.
+     * @param driveSubsystem The drive subsystem.
+     * @return The command running the whole routine.
+     */
+    public static Command fullRoutine(DriveSubsystem driveSubsystem) {
+        Map<Test, DriveCharacterizationLog> logs = new EnumMap<>(Test.class);
+        var routine = new SequentialCommandGroup();
+        for (Test test : Test.values()) {
+            var log = new DriveCharacterizationLog(CharacterizationConstants.kMaxSamples);
+            logs.put(test, log);
+            routine.addCommands(
+                new DriveCharacterizationCmd(driveSubsystem, test, log).withTimeout(test.getTimeout()),
+                new WaitCommand(CharacterizationConstants.kRestSeconds));
+        }
+        routine.addCommands(new InstantCommand(() -> analyzeAndSave(logs)));
+        return routine;
+    }
+
+    private static void analyzeAndSave(Map<Test, DriveCharacterizationLog> logs) {
+        Path deployDirectory = Filesystem.getDeployDirectory().toPath();
+        try (Writer writer = Files.newBufferedWriter(createParent(deployDirectory.resolve(CharacterizationConstants.kSamplesFile)))) {
+            writer.write("test,time,leftVolts,rightVolts,leftPosition,rightPosition,leftVelocity,rightVelocity,heading\n");
+            for (var entry : logs.entrySet()) {
+                entry.getValue().writeCsv(writer, entry.getKey().name());
+            }
+        } catch (IOException e) {
+            DriverStation.reportError("Failed to save the characterization samples: " + e, false);
+        }
+
+        var fit = DriveCharacterizationAnalysis.fitFeedforward(CharacterizationConstants.kMinVelocityMetersPerSecond,
+            logs.get(Test.QUASISTATIC_FORWARD), logs.get(Test.QUASISTATIC_REVERSE),
+            logs.get(Test.DYNAMIC_FORWARD), logs.get(Test.DYNAMIC_REVERSE));
+        double trackwidth = DriveCharacterizationAnalysis.fitTrackwidth(logs.get(Test.TRACKWIDTH));
+        if (fit.isEmpty() || Double.isNaN(trackwidth)) {
+            DriverStation.reportError("Drive characterization failed, the robot didn't move enough", false);
+            return;
+        }
+        var gains = new DriveGains(fit.get().ksVolts, fit.get().kvVoltSecondsPerMeter,
+            fit.get().kaVoltSecondsSquaredPerMeter, trackwidth);
+        String summary = gains + ", r^2 " + fit.get().rSquared + " from " + fit.get().samples + " samples";
+        System.out.println("Drive characterization: " + summary);
+        if (!gains.isValid()) {
+            DriverStation.reportError("Drive characterization gave invalid gains, not saving them: " + gains, false);
+            return;
+        }
+        try {
+            gains.save(DriveGains.getResultsFile(), summary);
+            System.out.println("Saved to " + DriveGains.getResultsFile() + ", copy it to src/main/deploy to keep it");
+        } catch (IOException e) {
+            DriverStation.reportError("Failed to save the drive characterization: " + e, false);
+        }
+    }
+
+    private static Path createParent(Path file) throws IOException {
+        Files.createDirectories(file.getParent());
+        return file;
+    }
+}
@@ -2,6 +2,7 @@ package frc.robot.commands;
 
 import frc.robot.Constants.AutonomousConstants.EncoderPIDConstants;
 import frc.robot.Constants.AutonomousConstants.headingPIDConstants;
+import frc.robot.abstract_classes.PIDConstants;
 import frc.robot.subsystems.DriveSubsystem;
 import edu.wpi.first.math.controller.PIDController;
 import edu.wpi.first.wpilibj2.command.CommandBase;
@@ -19,16 +20,23 @@ public class EncoderDriveCmd extends CommandBase {
    * @param driveSubsystem The subsystem used by this command.
    */
   public EncoderDriveCmd(DriveSubsystem driveSubsystem, double distance) {
+    this(driveSubsystem, distance,
+      new PIDConstants(headingPIDConstants.kP, headingPIDConstants.kI, headingPIDConstants.kD),
+      new PIDConstants(EncoderPIDConstants.kP, EncoderPIDConstants.kI, EncoderPIDConstants.kD));
+  }
+
+  /**
+   * Creates a new EncoderDriveCmd with its own gains, used for tuning.
+   *
+   * @param driveSubsystem The subsystem used by this command.
+   * @param headingPID The gains of the heading controller.
+   * @param encoderPID The gains of the distance controller.
+   */
+  public EncoderDriveCmd(DriveSubsystem driveSubsystem, double distance, PIDConstants headingPID, PIDConstants encoderPID) {
     this.driveSubsystem = driveSubsystem;
     this.distance = distance;
-		headingPidController = new PIDController(
-            headingPIDConstants.kP,
-            headingPIDConstants.kI, 
-            headingPIDConstants.kD);
-		encoderPIDController = new PIDController(
-						EncoderPIDConstants.kP,
-						EncoderPIDConstants.kI, 
-						EncoderPIDConstants.kD);
+		headingPidController = new PIDController(headingPID.kP, headingPID.kI, headingPID.kD);
+		encoderPIDController = new PIDController(encoderPID.kP, encoderPID.kI, encoderPID.kD);
     encoderPIDController.setTolerance(EncoderPIDConstants.kToleranceMeters);
     encoderPIDController.setIntegratorRange(0, 0.4);
     addRequirements(this.driveSubsystem);
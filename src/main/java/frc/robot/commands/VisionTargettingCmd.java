@@ -1,46 +1,98 @@
 package frc.robot.commands;
 
+import org.photonvision.targeting.PhotonPipelineResult;
+
 import edu.wpi.first.math.controller.PIDController;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj2.command.CommandBase;
 import frc.robot.Constants.PhotonVisionConstants;
+import frc.robot.abstract_classes.PIDConstants;
+import frc.robot.abstract_classes.VisionConsumer;
+import frc.robot.abstract_classes.VisionMode;
 import frc.robot.subsystems.DriveSubsystem;
 import frc.robot.subsystems.PhotonCameraSystem;
+import frc.robot.subsystems.VisionTargetTracker;
 
-public class VisionTargettingCmd extends CommandBase{
+public class VisionTargettingCmd extends CommandBase implements VisionConsumer {
     private final DriveSubsystem driveSubsystem;
     private final PIDController fowardController;
     private final PIDController turnController;
-    private final PhotonCameraSystem cameraSystem;
+    private final VisionTargetTracker targetTracker = new VisionTargetTracker();
+    private PhotonCameraSystem cameraSystem;
+    private int lastResultSequence;
+    private final PIDConstants fowardPIDOverride;
+    private final PIDConstants turnPIDOverride;
 
+    /**
+     * Drives to the target using the gains of the active camera.
+     * @param driveSubsystem The drive subsystem.
+     */
     public VisionTargettingCmd(DriveSubsystem driveSubsystem) {
+        this(driveSubsystem, null, null);
+    }
+
+    /**
+     * Drives to the target using the given gains instead of the camera's, used for tuning.
+     * @param driveSubsystem The drive subsystem.
+     * @param fowardPID The gains of the foward controller, null to use the camera's.
+     * @param turnPID The gains of the turn controller, null to use the camera's.
+     */
+    public VisionTargettingCmd(DriveSubsystem driveSubsystem, PIDConstants fowardPID, PIDConstants turnPID) {
         this.driveSubsystem = driveSubsystem;
-        this.cameraSystem = driveSubsystem.getCameraSystem();
-        var fowardPID = cameraSystem.cameraDetails.getFowardPIDConstants();
-        var turnPID = cameraSystem.cameraDetails.getTurnPIDConstants();
-        fowardController = new PIDController(fowardPID.kP, fowardPID.kD, fowardPID.kI);
-        turnController = new PIDController(turnPID.kP, turnPID.kD, turnPID.kI);
+        this.fowardPIDOverride = fowardPID;
+        this.turnPIDOverride = turnPID;
+        fowardController = new PIDController(0, 0, 0);
+        turnController = new PIDController(0, 0, 0);
         addRequirements(driveSubsystem);
     }
 
     @Override
     public void initialize() {
+        // The active camera can be switched from the dashboard, so pick it up every time we start.
+        cameraSystem = driveSubsystem.getCameraSystem();
+        var fowardPID = fowardPIDOverride != null ? fowardPIDOverride : cameraSystem.cameraDetails.getFowardPIDConstants();
+        var turnPID = turnPIDOverride != null ? turnPIDOverride : cameraSystem.cameraDetails.getTurnPIDConstants();
+        fowardController.setPID(fowardPID.kP, fowardPID.kI, fowardPID.kD);
+        turnController.setPID(turnPID.kP, turnPID.kI, turnPID.kD);
+        fowardController.reset();
+        turnController.reset();
+        targetTracker.reset();
+        lastResultSequence = -1;
         System.out.println("Vision Targetting Started!");
     }
     
     @Override
     public void execute() {
-        var trackedTagets = cameraSystem.getTrackedTargets();
-        
-        if (trackedTagets.isEmpty()) {
+        // Only look at the frame when a new one comes in, between frames we predict where the target is.
+        var frame = cameraSystem.getLatestFrame();
+        if (frame.sequence != lastResultSequence) {
+            lastResultSequence = frame.sequence;
+            addFrame(frame.result);
+        }
+
+        if (!targetTracker.hasTarget(Timer.getFPGATimestamp())) {
             driveSubsystem.stopMotors();
             return;
         }
 
-        double fowardSpeed = fowardController.calculate(cameraSystem.getArea(), PhotonVisionConstants.kTargetArea);
-        double turnSpeed = turnController.calculate(cameraSystem.getYaw(),0);
+        double fowardSpeed = fowardController.calculate(targetTracker.getArea(), PhotonVisionConstants.kTargetArea);
+        double turnSpeed = turnController.calculate(targetTracker.getPredictedYaw(driveSubsystem.getAngle()), 0);
         driveSubsystem.drive(fowardSpeed, turnSpeed, false);
     }
 
+    private void addFrame(PhotonPipelineResult latestResult) {
+        if (!latestResult.hasTargets()) return;
+
+        var bestTarget = latestResult.getBestTarget();
+        double timestamp = latestResult.getTimestampSeconds();
+        targetTracker.addObservation(timestamp, bestTarget.getYaw(), bestTarget.getArea(), driveSubsystem.getAngleAt(timestamp));
+    }
+
+    @Override
+    public VisionMode getRequiredVisionMode() {
+        return VisionMode.APRILTAG;
+    }
+
     @Override
     public void end(boolean interrupted) {
         driveSubsystem.drive(0, 0);
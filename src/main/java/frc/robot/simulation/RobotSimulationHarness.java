@@ -0,0 +1,218 @@
+package frc.robot.simulation;
+
+import java.util.function.Consumer;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.TimedRobot;
+import edu.wpi.first.wpilibj.simulation.DriverStationSim;
+import edu.wpi.first.wpilibj.simulation.RoboRioSim;
+import edu.wpi.first.wpilibj.simulation.SimHooks;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import frc.robot.Constants;
+import frc.robot.RobotContainer;
+import frc.robot.subsystems.AprilTagFieldCache;
+import frc.robot.utils.AllocationMonitor;
+
+/**
+ * Runs the whole robot in simulation without a GUI and without waiting for the clock.
+ * <p>The simulated clock is paused and only moves when we step it, so the loops run
+ * as fast as the CPU allows and always in the same order:
+ * the periodic tasks every {@link RobotContainer#getFastPeriodSeconds()}, and the scheduler
+ * (subsystems, drivetrain sim, commands) plus the vision sim every {@link TimedRobot#kDefaultPeriod}.
+ * The cameras don't use their vision threads here, every step processes the new frames itself,
+ * so the vision poses reach the pose estimator on the same loop every run.<p>
+ * <p>Only one harness can be open at a time, as the HAL and the scheduler are shared by the whole program.
+ * Use it from the thread that made it, that is the thread whose allocations are counted.<p>
+ */
+public class RobotSimulationHarness implements AutoCloseable {
+    private final RobotContainer robotContainer;
+    private double nextMainLoopTime;
+    private long peakLoopNanos;
+    private long allocatedBytes;
+    private long mainLoopCount;
+
+    /**
+     * The result of running an autonomous routine.
+     */
+    public static class AutoResult {
+        /** true if the command finished by itself before the time ran out. */
+        public final boolean finished;
+        /** How long the routine took in simulated time. */
+        public final double simulatedSeconds;
+        /** How long the routine took on the wall clock. */
+        public final double wallSeconds;
+        /** Where the simulated robot really ended up. */
+        public final Pose2d finalPose;
+        /** Where the robot thinks it ended up. */
+        public final Pose2d estimatedPose;
+        /** The longest a single main loop (scheduler plus simulation) took on the wall clock. */
+        public final double peakLoopSeconds;
+        /** How many bytes the robot thread allocated per main loop, NaN if the JVM can't tell us. */
+        public final double allocatedBytesPerLoop;
+
+        AutoResult(boolean finished, double simulatedSeconds, double wallSeconds, Pose2d finalPose, Pose2d estimatedPose,
+                double peakLoopSeconds, double allocatedBytesPerLoop) {
+            this.finished = finished;
+            this.simulatedSeconds = simulatedSeconds;
+            this.wallSeconds = wallSeconds;
+            this.finalPose = finalPose;
+            this.estimatedPose = estimatedPose;
+            this.peakLoopSeconds = peakLoopSeconds;
+            this.allocatedBytesPerLoop = allocatedBytesPerLoop;
+        }
+    }
+
+    /**
+     * Boots the robot code with the clock paused and the robot disabled.
+     */
+    public RobotSimulationHarness() {
+        this(SimulationDisturbances.NONE);
+    }
+
+    /**
+     * Boots the robot code with the clock paused and the robot disabled.
+     * @param disturbances The things that go wrong on this simulated robot.
+     */
+    public RobotSimulationHarness(SimulationDisturbances disturbances) {
+        HAL.initialize(500, 0);
+        SimHooks.pauseTiming();
+        AprilTagFieldCache.preload();
+        DriverStationSim.setEnabled(false);
+        DriverStationSim.notifyNewData();
+        RoboRioSim.setVInVoltage(disturbances.batteryVoltage);
+        robotContainer = new RobotContainer();
+        robotContainer.setSimulationDisturbances(disturbances);
+        robotContainer.getDriveSubsystem().getVisionSystem().useSynchronousProcessing();
+        nextMainLoopTime = Timer.getFPGATimestamp();
+    }
+
+    /**
+     * @return The robot container being simulated.
+     */
+    public RobotContainer getRobotContainer() {
+        return robotContainer;
+    }
+
+    /**
+     * @return The simulated time in seconds.
+     */
+    public double getTime() {
+        return Timer.getFPGATimestamp();
+    }
+
+    /**
+     * Moves the clock forward by one fast loop, running every loop that is due.
+     */
+    public void step() {
+        SimHooks.stepTiming(robotContainer.getFastPeriodSeconds());
+        // Estimate the frames the vision sim published last loop, the next scheduler run picks them up.
+        robotContainer.getDriveSubsystem().getVisionSystem().processNewFrames();
+        robotContainer.fastPeriodic();
+        // The clock counts whole microseconds, so don't let rounding skip a loop.
+        if (Timer.getFPGATimestamp() >= nextMainLoopTime - 1e-6) {
+            nextMainLoopTime += TimedRobot.kDefaultPeriod;
+            long startBytes = AllocationMonitor.getAllocatedBytes();
+            long startNanos = System.nanoTime();
+            CommandScheduler.getInstance().run();
+            robotContainer.simulationPeriodic();
+            peakLoopNanos = Math.max(peakLoopNanos, System.nanoTime() - startNanos);
+            allocatedBytes += AllocationMonitor.getBytesSince(startBytes);
+            mainLoopCount++;
+        }
+    }
+
+    /**
+     * Runs the robot for some simulated time.
+     * @param seconds How long to run for in simulated seconds.
+     */
+    public void runFor(double seconds) {
+        double endTime = Timer.getFPGATimestamp() + seconds;
+        while (Timer.getFPGATimestamp() < endTime) {
+            step();
+        }
+    }
+
+    /**
+     * Enables the robot in autonomous and runs an autonomous routine until it finishes or the time runs out.
+     * The robot is disabled again afterwards.
+     * @param autoName The name of the routine, from {@link Constants.AutonomousConstants}.
+     * @param timeoutSeconds The most simulated time to run it for, a match auto is 15 seconds.
+     * @return How it went.
+     */
+    public AutoResult runAutonomous(String autoName, double timeoutSeconds) {
+        return runCommand(robotContainer.getAutonomousCommand(autoName), timeoutSeconds, harness -> {});
+    }
+
+    /**
+     * Enables the robot in autonomous and runs a command until it finishes or the time runs out.
+     * The robot is disabled again afterwards.
+     * @param command The command to run, null does nothing.
+     * @param timeoutSeconds The most simulated time to run it for.
+     * @param everyLoop Called after every scheduler run while the command runs, to record how it's doing.
+     * @return How it went.
+     */
+    public AutoResult runCommand(Command command, double timeoutSeconds, Consumer<RobotSimulationHarness> everyLoop) {
+        setMode(true, true);
+        peakLoopNanos = 0;
+        allocatedBytes = 0;
+        mainLoopCount = 0;
+        double startTime = Timer.getFPGATimestamp();
+        long startWallTime = System.nanoTime();
+        boolean finished = command == null;
+        if (command != null) {
+            command.schedule();
+            // Let the scheduler start it before checking if it's done.
+            stepMainLoop();
+            everyLoop.accept(this);
+            while (Timer.getFPGATimestamp() - startTime < timeoutSeconds) {
+                if (!command.isScheduled()) {
+                    finished = true;
+                    break;
+                }
+                stepMainLoop();
+                everyLoop.accept(this);
+            }
+            command.cancel();
+        }
+        double simulatedSeconds = Timer.getFPGATimestamp() - startTime;
+        double wallSeconds = (System.nanoTime() - startWallTime) / 1e9;
+        setMode(false, false);
+        var driveSubsystem = robotContainer.getDriveSubsystem();
+        double allocatedBytesPerLoop = !AllocationMonitor.isSupported() || mainLoopCount == 0
+            ? Double.NaN
+            : (double) allocatedBytes / mainLoopCount;
+        return new AutoResult(finished, simulatedSeconds, wallSeconds,
+            driveSubsystem.getSimulatedPose(), driveSubsystem.getEstimatedPose(),
+            peakLoopNanos / 1e9, allocatedBytesPerLoop);
+    }
+
+    /**
+     * Steps fast loops until the scheduler has run once.
+     */
+    private void stepMainLoop() {
+        double mainLoopTime = nextMainLoopTime;
+        while (nextMainLoopTime == mainLoopTime) {
+            step();
+        }
+    }
+
+    private void setMode(boolean enabled, boolean autonomous) {
+        DriverStationSim.setAutonomous(autonomous);
+        DriverStationSim.setEnabled(enabled);
+        DriverStationSim.notifyNewData();
+    }
+
+    /**
+     * Frees the robot so another harness can be made, and lets the clock run again.
+     */
+    @Override
+    public void close() throws Exception {
+        setMode(false, false);
+        robotContainer.close();
+        RoboRioSim.setVInVoltage(SimulationDisturbances.NONE.batteryVoltage);
+        SimHooks.resumeTiming();
+    }
+}
@@ -0,0 +1,55 @@
+package frc.robot.simulation;
+
+import java.util.Random;
+
+import frc.robot.Constants.SimulationConstants.MonteCarloConstants;
+
+/**
+ * Things that go wrong on a real robot, applied to the simulation to see how well a routine copes.
+ */
+public class SimulationDisturbances {
+    /** A perfect robot, the default for every simulation. */
+    public static final SimulationDisturbances NONE = new SimulationDisturbances(0, 0, 12, 0, 0, 0, 0);
+
+    /** How much more the left encoder counts than the robot really moved, 0.05 is 5% more. */
+    public final double leftWheelSlip;
+    /** How much more the right encoder counts than the robot really moved. */
+    public final double rightWheelSlip;
+    public final double batteryVoltage;
+    /** Gyro drift that calibration didn't catch, in degrees per second. */
+    public final double gyroBiasDegreesPerSecond;
+    /** The standard deviation of the noise on the pose each simulated camera frame is taken from. */
+    public final double visionNoiseMeters;
+    public final double visionNoiseRadians;
+    /** Used to make the vision noise, so a run can be repeated. */
+    public final long seed;
+
+    public SimulationDisturbances(double leftWheelSlip, double rightWheelSlip, double batteryVoltage,
+            double gyroBiasDegreesPerSecond, double visionNoiseMeters, double visionNoiseRadians, long seed) {
+        this.leftWheelSlip = leftWheelSlip;
+        this.rightWheelSlip = rightWheelSlip;
+        this.batteryVoltage = batteryVoltage;
+        this.gyroBiasDegreesPerSecond = gyroBiasDegreesPerSecond;
+        this.visionNoiseMeters = visionNoiseMeters;
+        this.visionNoiseRadians = visionNoiseRadians;
+        this.seed = seed;
+    }
+
+    /**
+     * Picks random disturbances within the ranges in {@link MonteCarloConstants}.
+     * @param seed The same seed always gives the same disturbances.
+     * @return The disturbances.
+     */
+    public static SimulationDisturbances random(long seed) {
+        var random = new Random(seed);
+        return new SimulationDisturbances(
+            random.nextDouble() * MonteCarloConstants.kMaxWheelSlip,
+            random.nextDouble() * MonteCarloConstants.kMaxWheelSlip,
+            MonteCarloConstants.kMinBatteryVoltage
+                + random.nextDouble() * (MonteCarloConstants.kMaxBatteryVoltage - MonteCarloConstants.kMinBatteryVoltage),
+            (random.nextDouble() * 2 - 1) * MonteCarloConstants.kMaxGyroBiasDegreesPerSecond,
+            MonteCarloConstants.kVisionNoiseMeters,
+            MonteCarloConstants.kVisionNoiseRadians,
+            random.nextLong());
+    }
+}
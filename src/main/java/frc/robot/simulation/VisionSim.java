@@ -0,0 +1,123 @@
+package frc.robot.simulation;
+
+import java.util.Random;
+import java.util.function.Supplier;
+
+import org.photonvision.PhotonCamera;
+import org.photonvision.SimPhotonCamera;
+import org.photonvision.SimVisionSystem;
+import org.photonvision.SimVisionTarget;
+
+import edu.wpi.first.apriltag.AprilTag;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Transform2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.interpolation.TimeInterpolatableBuffer;
+import edu.wpi.first.wpilibj.Timer;
+import frc.robot.Constants.SimulationConstants.VisionSimConstants;
+import frc.robot.abstract_classes.CameraInterface;
+import frc.robot.subsystems.AprilTagFieldCache;
+
+/**
+ * Simulates every camera on the robot seeing the 2023 AprilTags, so the pose estimation
+ * and alignment code can be run on a laptop.
+ * <p>Each camera makes frames at {@link VisionSimConstants#kFps}, and a frame is only published
+ * {@link VisionSimConstants#kLatencySeconds} after it was taken, showing where the robot was back then.<p>
+ * <p>{@link SimVisionSystem} always publishes with 0 latency, so it only works out what each camera sees, under a
+ * name nobody else reads. The targets are then published under the real camera name with a
+ * {@link SimPhotonCamera} and the real latency, so every frame is time stamped when it was taken.<p>
+ */
+public class VisionSim {
+    // The suffix of the camera names the SimVisionSystems publish under, the robot code never reads these.
+    private static final String kRendererSuffix = "-renderer";
+
+    private final Supplier<Pose2d> poseSupplier;
+    private final SimVisionSystem[] visionSystems;
+    private final PhotonCamera[] renderedCameras;
+    private final SimPhotonCamera[] simCameras;
+    private final double[] nextCaptureTimes;
+    private final TimeInterpolatableBuffer<Pose2d> poseHistory =
+        TimeInterpolatableBuffer.createBuffer(VisionSimConstants.kPoseHistorySeconds);
+    private Random noiseRandom = new Random();
+    private double noiseMeters;
+    private double noiseRadians;
+
+    /**
+     * @param poseSupplier The true pose of the simulated robot, use the drivetrain simulation not the odometry.
+     * @param cameras The cameras to simulate.
+     */
+    public VisionSim(Supplier<Pose2d> poseSupplier, CameraInterface... cameras) {
+        this.poseSupplier = poseSupplier;
+        visionSystems = new SimVisionSystem[cameras.length];
+        renderedCameras = new PhotonCamera[cameras.length];
+        simCameras = new SimPhotonCamera[cameras.length];
+        nextCaptureTimes = new double[cameras.length];
+        var fieldLayout = AprilTagFieldCache.getLayout();
+        double now = Timer.getFPGATimestamp();
+        for (int i = 0; i < cameras.length; i++) {
+            String rendererName = cameras[i].getCameraName() + kRendererSuffix;
+            visionSystems[i] = new SimVisionSystem(
+                rendererName,
+                VisionSimConstants.kDiagonalFovDegrees,
+                cameras[i].getRobotToCam(),
+                VisionSimConstants.kMaxRangeMeters,
+                VisionSimConstants.kResolutionWidth,
+                VisionSimConstants.kResolutionHeight,
+                VisionSimConstants.kMinTargetArea);
+            renderedCameras[i] = new PhotonCamera(rendererName);
+            simCameras[i] = new SimPhotonCamera(cameras[i].getCameraName());
+            if (fieldLayout.isPresent()) {
+                for (AprilTag tag : fieldLayout.get().getTags()) {
+                    visionSystems[i].addSimVisionTarget(new SimVisionTarget(
+                        tag.pose, VisionSimConstants.kTagSizeMeters, VisionSimConstants.kTagSizeMeters, tag.ID));
+                }
+            }
+            // Spread the cameras out, real cameras aren't in sync either.
+            nextCaptureTimes[i] = now + i * (1.0 / VisionSimConstants.kFps) / cameras.length;
+        }
+    }
+
+    /**
+     * Adds random noise to the pose each frame is taken from, off by default.
+     * @param noiseMeters The standard deviation of the x and y noise.
+     * @param noiseRadians The standard deviation of the heading noise.
+     * @param seed The seed of the noise, so a run can be repeated.
+     */
+    public void setPoseNoise(double noiseMeters, double noiseRadians, long seed) {
+        this.noiseMeters = noiseMeters;
+        this.noiseRadians = noiseRadians;
+        this.noiseRandom = new Random(seed);
+    }
+
+    /**
+     * Publishes every frame that is due, call this every simulation loop.
+     */
+    public void update() {
+        double now = Timer.getFPGATimestamp();
+        poseHistory.addSample(now, poseSupplier.get());
+        double framePeriod = 1.0 / VisionSimConstants.kFps;
+        for (int i = 0; i < visionSystems.length; i++) {
+            if (now < nextCaptureTimes[i] + VisionSimConstants.kLatencySeconds) continue;
+            var capturedPose = poseHistory.getSample(nextCaptureTimes[i]);
+            if (capturedPose.isPresent()) {
+                visionSystems[i].processFrame(addNoise(capturedPose.get()));
+                // Publish what it saw with how long ago it was taken, so the timestamp is the capture time.
+                double latencyMillis = (now - nextCaptureTimes[i]) * 1000;
+                simCameras[i].submitProcessedFrame(latencyMillis, renderedCameras[i].getLatestResult().getTargets());
+            }
+            nextCaptureTimes[i] += framePeriod;
+            // If the loop stalled don't try to catch up with a burst of frames.
+            if (nextCaptureTimes[i] + VisionSimConstants.kLatencySeconds < now) {
+                nextCaptureTimes[i] = now;
+            }
+        }
+    }
+
+    private Pose2d addNoise(Pose2d pose) {
+        if (noiseMeters == 0 && noiseRadians == 0) return pose;
+        return pose.plus(new Transform2d(
+            new Translation2d(noiseRandom.nextGaussian() * noiseMeters, noiseRandom.nextGaussian() * noiseMeters),
+            new Rotation2d(noiseRandom.nextGaussian() * noiseRadians)));
+    }
+}
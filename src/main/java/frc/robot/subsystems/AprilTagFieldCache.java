@@ -0,0 +1,180 @@
+package frc.robot.subsystems;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import edu.wpi.first.apriltag.AprilTag;
+import edu.wpi.first.apriltag.AprilTagFieldLayout;
+import edu.wpi.first.apriltag.AprilTagFields;
+import edu.wpi.first.wpilibj.DriverStation;
+
+/**
+ * Loads the 2023 AprilTag field layout once and shares it between every camera.
+ * <p>The tag poses are also copied into plain arrays indexed by fiducial ID,
+ * so looking up a tag every frame does not need an {@link Optional} or a new Pose3d.<p>
+ */
+public final class AprilTagFieldCache {
+    private static CompletableFuture<AprilTagFieldLayout> layoutFuture;
+    private static volatile TagIndex tagIndex;
+
+    private AprilTagFieldCache() {}
+
+    /**
+     * Starts loading the field layout on a background thread.
+     * Call this as early as possible, calling it again does nothing.
+     */
+    public static synchronized void preload() {
+        if (layoutFuture != null) return;
+        layoutFuture = CompletableFuture.supplyAsync(AprilTagFieldCache::loadLayout)
+            .exceptionally(AprilTagFieldCache::reportLoadFailure);
+    }
+
+    /**
+     * Gets the shared field layout, waiting for it to load if it hasn't yet.
+     * <p>Do not change the origin of the returned layout, every pose estimator uses the same one.<p>
+     * @return The field layout, or empty if it failed to load.
+     */
+    public static Optional<AprilTagFieldLayout> getLayout() {
+        preload();
+        return Optional.ofNullable(layoutFuture.join());
+    }
+
+    /**
+     * Gets the shared field layout without waiting for it, for code that can try again later.
+     * <p>Do not change the origin of the returned layout, every pose estimator uses the same one.<p>
+     * @return The field layout, or empty if it is still loading or failed to load.
+     */
+    public static Optional<AprilTagFieldLayout> getLayoutIfLoaded() {
+        preload();
+        if (!layoutFuture.isDone()) return Optional.empty();
+        return Optional.ofNullable(layoutFuture.join());
+    }
+
+    /**
+     * @return true if the layout finished loading and the tag arrays can be used.
+     */
+    public static boolean isLoaded() {
+        return tagIndex != null;
+    }
+
+    /**
+     * @param id The fiducial ID of the tag.
+     * @return true if the tag is on the field layout.
+     */
+    public static boolean hasTag(int id) {
+        var index = tagIndex;
+        return index != null && id >= 0 && id < index.present.length && index.present[id];
+    }
+
+    /**
+     * @param id The fiducial ID of the tag.
+     * @return The X position of the tag in meters, or NaN if there is no such tag.
+     */
+    public static double getTagX(int id) {
+        return hasTag(id) ? tagIndex.x[id] : Double.NaN;
+    }
+
+    /**
+     * @param id The fiducial ID of the tag.
+     * @return The Y position of the tag in meters, or NaN if there is no such tag.
+     */
+    public static double getTagY(int id) {
+        return hasTag(id) ? tagIndex.y[id] : Double.NaN;
+    }
+
+    /**
+     * @param id The fiducial ID of the tag.
+     * @return The height of the tag in meters, or NaN if there is no such tag.
+     */
+    public static double getTagZ(int id) {
+        return hasTag(id) ? tagIndex.z[id] : Double.NaN;
+    }
+
+    /**
+     * @param id The fiducial ID of the tag.
+     * @return The direction the tag is facing in radians counterclockwise, or NaN if there is no such tag.
+     */
+    public static double getTagYaw(int id) {
+        return hasTag(id) ? tagIndex.yaw[id] : Double.NaN;
+    }
+
+    /**
+     * @return The length of the field (along X) in meters, or NaN if the layout isn't loaded.
+     */
+    public static double getFieldLength() {
+        var index = tagIndex;
+        return index == null ? Double.NaN : index.fieldLength;
+    }
+
+    /**
+     * @return The width of the field (along Y) in meters, or NaN if the layout isn't loaded.
+     */
+    public static double getFieldWidth() {
+        var index = tagIndex;
+        return index == null ? Double.NaN : index.fieldWidth;
+    }
+
+    private static AprilTagFieldLayout loadLayout() {
+        try {
+            AprilTagFieldLayout fieldLayout = AprilTagFields.k2023ChargedUp.loadAprilTagLayoutField();
+            tagIndex = new TagIndex(fieldLayout);
+            System.out.println("Loaded AprilTagFieldLayout");
+            return fieldLayout;
+        } catch (IOException e) {
+            // The AprilTagFieldLayout failed to load. We won't be able to estimate poses if we don't know
+            // where the tags are.
+            DriverStation.reportError("Failed to load AprilTagFieldLayout", e.getStackTrace());
+            return null;
+        }
+    }
+
+    /**
+     * Reports anything other than an IOException that stopped the layout from loading, like a bad resource.
+     * @param throwable What the load threw, wrapped by the future.
+     * @return null, so the layout is empty like when the IOException is caught.
+     */
+    private static AprilTagFieldLayout reportLoadFailure(Throwable throwable) {
+        Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+            ? throwable.getCause()
+            : throwable;
+        DriverStation.reportError("Failed to load AprilTagFieldLayout: " + cause, cause.getStackTrace());
+        return null;
+    }
+
+    /**
+     * The tag poses split into arrays, built once and never changed so it can be shared between threads.
+     */
+    private static final class TagIndex {
+        private final boolean[] present;
+        private final double[] x;
+        private final double[] y;
+        private final double[] z;
+        private final double[] yaw;
+        private final double fieldLength;
+        private final double fieldWidth;
+
+        private TagIndex(AprilTagFieldLayout fieldLayout) {
+            fieldLength = fieldLayout.getFieldLength();
+            fieldWidth = fieldLayout.getFieldWidth();
+            int maxId = 0;
+            for (AprilTag tag : fieldLayout.getTags()) {
+                maxId = Math.max(maxId, tag.ID);
+            }
+            present = new boolean[maxId + 1];
+            x = new double[maxId + 1];
+            y = new double[maxId + 1];
+            z = new double[maxId + 1];
+            yaw = new double[maxId + 1];
+            for (AprilTag tag : fieldLayout.getTags()) {
+                if (tag.ID < 0) continue;
+                present[tag.ID] = true;
+                x[tag.ID] = tag.pose.getX();
+                y[tag.ID] = tag.pose.getY();
+                z[tag.ID] = tag.pose.getZ();
+                yaw[tag.ID] = tag.pose.getRotation().getZ();
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package frc.robot.subsystems;
+
+import java.util.Optional;
+
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.Nat;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N3;
+
+/**
+ * Fits the drive feedforward and track width to the samples of the characterization tests.
+ */
+public final class DriveCharacterizationAnalysis {
+    private static final int kMinSamples = 10;
+
+    private DriveCharacterizationAnalysis() {}
+
+    /**
+     * The result of fitting {@code V = ks * sign(v) + kv * v + ka * a}.
+     */
+    public static class FeedforwardFit {
+        public final double ksVolts;
+        public final double kvVoltSecondsPerMeter;
+        public final double kaVoltSecondsSquaredPerMeter;
+        /** How much of the voltage the fit explains, 1 is perfect. */
+        public final double rSquared;
+        public final int samples;
+
+        FeedforwardFit(double ksVolts, double kvVoltSecondsPerMeter, double kaVoltSecondsSquaredPerMeter, double rSquared, int samples) {
+            this.ksVolts = ksVolts;
+            this.kvVoltSecondsPerMeter = kvVoltSecondsPerMeter;
+            this.kaVoltSecondsSquaredPerMeter = kaVoltSecondsSquaredPerMeter;
+            this.rSquared = rSquared;
+            this.samples = samples;
+        }
+    }
+
+    /**
+     * Fits the feedforward with ordinary least squares, both sides of the drive together.
+     * <p>Use the quasistatic tests for kv and ks and the dynamic tests for ka, so pass all of them.
+     * The acceleration is the central difference of the encoder velocity.<p>
+     * @param minVelocity Samples slower than this (meters per second) are left out, they are mostly static friction.
+     * @param logs The logs of the tests.
+     * @return The fit, or empty if there isn't enough moving data to fit.
+     */
+    public static Optional<FeedforwardFit> fitFeedforward(double minVelocity, DriveCharacterizationLog... logs) {
+        // The normal equations are summed as we go, so no big matrix is made.
+        var xtx = new Matrix<>(Nat.N3(), Nat.N3());
+        var xty = new Matrix<>(Nat.N3(), Nat.N1());
+        double[] row = new double[3];
+        double yty = 0;
+        double ySum = 0;
+        int samples = 0;
+        for (var log : logs) {
+            for (int i = 1; i < log.size() - 1; i++) {
+                double dt = log.getTime(i + 1) - log.getTime(i - 1);
+                if (dt <= 0) continue;
+                for (int side = 0; side < 2; side++) {
+                    boolean left = side == 0;
+                    double velocity = left ? log.getLeftVelocity(i) : log.getRightVelocity(i);
+                    if (Math.abs(velocity) < minVelocity) continue;
+                    double acceleration = left
+                        ? (log.getLeftVelocity(i + 1) - log.getLeftVelocity(i - 1)) / dt
+                        : (log.getRightVelocity(i + 1) - log.getRightVelocity(i - 1)) / dt;
+                    double volts = left ? log.getLeftVolts(i) : log.getRightVolts(i);
+                    row[0] = Math.signum(velocity);
+                    row[1] = velocity;
+                    row[2] = acceleration;
+                    for (int r = 0; r < 3; r++) {
+                        for (int c = 0; c < 3; c++) {
+                            xtx.set(r, c, xtx.get(r, c) + row[r] * row[c]);
+                        }
+                        xty.set(r, 0, xty.get(r, 0) + row[r] * volts);
+                    }
+                    yty += volts * volts;
+                    ySum += volts;
+                    samples++;
+                }
+            }
+        }
+        if (samples < kMinSamples) return Optional.empty();
+
+        Matrix<N3, N1> gains = xtx.solve(xty);
+        double ks = gains.get(0, 0);
+        double kv = gains.get(1, 0);
+        double ka = gains.get(2, 0);
+        if (!Double.isFinite(ks) || !Double.isFinite(kv) || !Double.isFinite(ka)) return Optional.empty();
+
+        // Residual sum of squares from the sums, y'y - 2b'X'y + b'X'Xb.
+        double residual = yty - 2 * gains.transpose().times(xty).get(0, 0)
+            + gains.transpose().times(xtx).times(gains).get(0, 0);
+        double total = yty - ySum * ySum / samples;
+        double rSquared = total > 0 ? 1 - residual / total : 0;
+        return Optional.of(new FeedforwardFit(ks, kv, ka, rSquared, samples));
+    }
+
+    /**
+     * Fits the effective track width to a log of the robot spinning in place.
+     * <p>The difference of the wheel distances is the track width times the heading change,
+     * the slope is fitted through every sample so noise at the ends doesn't matter much.
+     * Wheels scrub when turning, so this comes out wider than the tape measure says, which is what the kinematics needs.<p>
+     * @param log The log of the spin.
+     * @return The track width in meters, or NaN if the robot didn't turn.
+     */
+    public static double fitTrackwidth(DriveCharacterizationLog log) {
+        if (log.size() < 2) return Double.NaN;
+        double startHeading = log.getHeading(0);
+        double startDifference = log.getRightPosition(0) - log.getLeftPosition(0);
+        double headingSquaredSum = 0;
+        double productSum = 0;
+        for (int i = 1; i < log.size(); i++) {
+            // The gyro is clockwise positive, turning counterclockwise moves the right wheel foward.
+            double headingChange = -Math.toRadians(log.getHeading(i) - startHeading);
+            double wheelDifference = log.getRightPosition(i) - log.getLeftPosition(i) - startDifference;
+            headingSquaredSum += headingChange * headingChange;
+            productSum += headingChange * wheelDifference;
+        }
+        // Less than a tenth of a turn is too little to trust.
+        double finalHeadingChange = Math.toRadians(log.getHeading(log.size() - 1) - startHeading);
+        if (Math.abs(finalHeadingChange) < Math.PI / 5) return Double.NaN;
+        return productSum / headingSquaredSum;
+    }
+}
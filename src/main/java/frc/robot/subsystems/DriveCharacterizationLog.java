@@ -0,0 +1,117 @@
+package frc.robot.subsystems;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * The samples of one drive characterization test, recorded every fast loop.
+ * <p>The arrays are made once, so recording doesn't allocate while the robot is driving.<p>
+ * <p>Voltages are what was asked of the motors, positions and velocities are from the encoders,
+ * the heading is the gyro angle in degrees, clockwise positive like {@link DriveSubsystem#getAngle()}.<p>
+ */
+public class DriveCharacterizationLog {
+    private final double[] time;
+    private final double[] leftVolts;
+    private final double[] rightVolts;
+    private final double[] leftPosition;
+    private final double[] rightPosition;
+    private final double[] leftVelocity;
+    private final double[] rightVelocity;
+    private final double[] heading;
+    private int size;
+
+    /**
+     * @param capacity The most samples to keep, later ones are dropped.
+     */
+    public DriveCharacterizationLog(int capacity) {
+        time = new double[capacity];
+        leftVolts = new double[capacity];
+        rightVolts = new double[capacity];
+        leftPosition = new double[capacity];
+        rightPosition = new double[capacity];
+        leftVelocity = new double[capacity];
+        rightVelocity = new double[capacity];
+        heading = new double[capacity];
+    }
+
+    /**
+     * Forgets every sample.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Adds a sample.
+     * @return false if the log is full and the sample was dropped.
+     */
+    public boolean add(double timestampSeconds, double leftVolts, double rightVolts,
+            double leftPositionMeters, double rightPositionMeters,
+            double leftVelocityMetersPerSecond, double rightVelocityMetersPerSecond, double headingDegrees) {
+        if (isFull()) return false;
+        time[size] = timestampSeconds;
+        this.leftVolts[size] = leftVolts;
+        this.rightVolts[size] = rightVolts;
+        leftPosition[size] = leftPositionMeters;
+        rightPosition[size] = rightPositionMeters;
+        leftVelocity[size] = leftVelocityMetersPerSecond;
+        rightVelocity[size] = rightVelocityMetersPerSecond;
+        heading[size] = headingDegrees;
+        size++;
+        return true;
+    }
+
+    public boolean isFull() {
+        return size == time.length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double getTime(int i) {
+        return time[i];
+    }
+
+    public double getLeftVolts(int i) {
+        return leftVolts[i];
+    }
+
+    public double getRightVolts(int i) {
+        return rightVolts[i];
+    }
+
+    public double getLeftPosition(int i) {
+        return leftPosition[i];
+    }
+
+    public double getRightPosition(int i) {
+        return rightPosition[i];
+    }
+
+    public double getLeftVelocity(int i) {
+        return leftVelocity[i];
+    }
+
+    public double getRightVelocity(int i) {
+        return rightVelocity[i];
+    }
+
+    public double getHeading(int i) {
+        return heading[i];
+    }
+
+    /**
+     * Writes the samples as CSV rows, without a header.
+     * @param writer Where to write them.
+     * @param testName Written in the first column of every row.
+     * @throws IOException If the writer fails.
+     */
+    public void writeCsv(Writer writer, String testName) throws IOException {
+        for (int i = 0; i < size; i++) {
+            writer.write(testName + "," + time[i] + "," + leftVolts[i] + "," + rightVolts[i] + ","
+                + leftPosition[i] + "," + rightPosition[i] + ","
+                + leftVelocity[i] + "," + rightVelocity[i] + "," + heading[i] + "\n");
+        }
+    }
+}
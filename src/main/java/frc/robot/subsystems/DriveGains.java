@@ -0,0 +1,141 @@
+package frc.robot.subsystems;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+import edu.wpi.first.math.controller.SimpleMotorFeedforward;
+import edu.wpi.first.math.kinematics.DifferentialDriveKinematics;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Filesystem;
+import frc.robot.Constants.DriveConstants;
+import frc.robot.Constants.DriveConstants.CharacterizationConstants;
+import frc.robot.Constants.DriveConstants.FeedForwardConstants;
+
+/**
+ * The feedforward gains and track width of the drivetrain.
+ * <p>These come from {@link frc.robot.commands.DriveCharacterizationCmd}, which saves them to
+ * {@link CharacterizationConstants#kResultsFile} in the deploy directory. Until the drive is characterized
+ * the values in {@link DriveConstants} are used.<p>
+ */
+public class DriveGains {
+    private static final String kKs = "ksVolts";
+    private static final String kKv = "kvVoltSecondsPerMeter";
+    private static final String kKa = "kaVoltSecondsSquaredPerMeter";
+    private static final String kTrackwidth = "trackwidthMeters";
+
+    public final double ksVolts;
+    public final double kvVoltSecondsPerMeter;
+    public final double kaVoltSecondsSquaredPerMeter;
+    public final double trackwidthMeters;
+
+    public DriveGains(double ksVolts, double kvVoltSecondsPerMeter, double kaVoltSecondsSquaredPerMeter, double trackwidthMeters) {
+        this.ksVolts = ksVolts;
+        this.kvVoltSecondsPerMeter = kvVoltSecondsPerMeter;
+        this.kaVoltSecondsSquaredPerMeter = kaVoltSecondsSquaredPerMeter;
+        this.trackwidthMeters = trackwidthMeters;
+    }
+
+    /**
+     * @return The gains in {@link DriveConstants}, used before the drive is characterized.
+     */
+    public static DriveGains getDefault() {
+        return new DriveGains(
+            FeedForwardConstants.ksVolts,
+            FeedForwardConstants.kvVoltSecondsPerMeter,
+            FeedForwardConstants.kaVoltSecondsSquaredPerMeter,
+            DriveConstants.kTrackwidthMeters);
+    }
+
+    /**
+     * @return The file in the deploy directory the characterization results are saved to.
+     */
+    public static Path getResultsFile() {
+        return Filesystem.getDeployDirectory().toPath().resolve(CharacterizationConstants.kResultsFile);
+    }
+
+    /**
+     * Loads the characterized gains from the deploy directory.
+     * @return The gains, or the defaults if the drive hasn't been characterized.
+     */
+    public static DriveGains load() {
+        return load(getResultsFile());
+    }
+
+    /**
+     * Loads gains saved by {@link #save(Path)}.
+     * @param file The file to load.
+     * @return The gains, or the defaults if the file is missing or broken.
+     */
+    public static DriveGains load(Path file) {
+        if (!Files.exists(file)) return getDefault();
+        var properties = new Properties();
+        try (InputStream input = Files.newInputStream(file)) {
+            properties.load(input);
+            var gains = new DriveGains(
+                Double.parseDouble(properties.getProperty(kKs)),
+                Double.parseDouble(properties.getProperty(kKv)),
+                Double.parseDouble(properties.getProperty(kKa)),
+                Double.parseDouble(properties.getProperty(kTrackwidth)));
+            if (!gains.isValid()) {
+                DriverStation.reportWarning("Ignoring invalid drive characterization in " + file, false);
+                return getDefault();
+            }
+            return gains;
+        } catch (IOException | NullPointerException | NumberFormatException e) {
+            DriverStation.reportWarning("Failed to load drive characterization from " + file + ": " + e, false);
+            return getDefault();
+        }
+    }
+
+    /**
+     * Saves the gains so {@link #load(Path)} can read them on the next boot.
+     * @param file The file to save to, its directory is made if needed.
+     * @param comment Written at the top of the file, like how good the fit was.
+     * @throws IOException If the file can't be written.
+     */
+    public void save(Path file, String comment) throws IOException {
+        var properties = new Properties();
+        properties.setProperty(kKs, Double.toString(ksVolts));
+        properties.setProperty(kKv, Double.toString(kvVoltSecondsPerMeter));
+        properties.setProperty(kKa, Double.toString(kaVoltSecondsSquaredPerMeter));
+        properties.setProperty(kTrackwidth, Double.toString(trackwidthMeters));
+        if (file.getParent() != null) Files.createDirectories(file.getParent());
+        try (OutputStream output = Files.newOutputStream(file)) {
+            properties.store(output, comment);
+        }
+    }
+
+    /**
+     * @return false if the gains can't be right, a robot can't speed up for free or have no width.
+     */
+    public boolean isValid() {
+        return Double.isFinite(ksVolts) && ksVolts >= 0
+            && Double.isFinite(kvVoltSecondsPerMeter) && kvVoltSecondsPerMeter > 0
+            && Double.isFinite(kaVoltSecondsSquaredPerMeter) && kaVoltSecondsSquaredPerMeter >= 0
+            && Double.isFinite(trackwidthMeters) && trackwidthMeters > 0;
+    }
+
+    /**
+     * @return A new feedforward with these gains.
+     */
+    public SimpleMotorFeedforward getFeedforward() {
+        return new SimpleMotorFeedforward(ksVolts, kvVoltSecondsPerMeter, kaVoltSecondsSquaredPerMeter);
+    }
+
+    /**
+     * @return New kinematics with this track width.
+     */
+    public DifferentialDriveKinematics getKinematics() {
+        return new DifferentialDriveKinematics(trackwidthMeters);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ks %.4f V, kv %.4f V*s/m, ka %.4f V*s^2/m, track width %.3f m",
+            ksVolts, kvVoltSecondsPerMeter, kaVoltSecondsSquaredPerMeter, trackwidthMeters);
+    }
+}
@@ -6,6 +6,7 @@
 package frc.robot.subsystems;
 
 
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Supplier;
 
 
@@ -15,29 +16,49 @@ import com.pathplanner.lib.PathPlanner;
 import com.pathplanner.lib.PathPlannerTrajectory;
 import com.pathplanner.lib.commands.PPRamseteCommand;
 
+import edu.wpi.first.math.MathUtil;
 import edu.wpi.first.math.controller.PIDController;
 import edu.wpi.first.math.controller.RamseteController;
 import edu.wpi.first.math.controller.SimpleMotorFeedforward;
 import edu.wpi.first.math.estimator.DifferentialDrivePoseEstimator;
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.interpolation.TimeInterpolatableBuffer;
 import edu.wpi.first.math.kinematics.DifferentialDriveKinematics;
 import edu.wpi.first.math.kinematics.DifferentialDriveOdometry;
 import edu.wpi.first.math.kinematics.DifferentialDriveWheelSpeeds;
+import edu.wpi.first.math.system.plant.DCMotor;
+import edu.wpi.first.math.system.plant.LinearSystemId;
+import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.Encoder;
 import edu.wpi.first.wpilibj.I2C;
+import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.drive.DifferentialDrive;
 import edu.wpi.first.wpilibj.motorcontrol.MotorControllerGroup;
+import edu.wpi.first.wpilibj.simulation.DifferentialDrivetrainSim;
+import edu.wpi.first.wpilibj.simulation.EncoderSim;
 import edu.wpi.first.wpilibj.smartdashboard.Field2d;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.robot.Constants;
 import frc.robot.Constants.DriveConstants;
+import frc.robot.Constants.DriveConstants.VelocityControlConstants;
+import frc.robot.Constants.PhotonVisionConstants;
+import frc.robot.Constants.SimulationConstants.DrivetrainSimConstants;
 import frc.robot.MPU6050.MPU6050;
+import frc.robot.abstract_classes.PIDConstants;
+import frc.robot.simulation.SimulationDisturbances;
+import frc.robot.utils.LoopProfiler;
 
 import static frc.robot.Constants.is_debug;
 
 public class DriveSubsystem extends SubsystemBase implements AutoCloseable{
+  private final LoopProfiler.Section periodicSection = LoopProfiler.section("DriveSubsystem.periodic");
+  private final Runnable periodicBody = this::periodicImpl;
   private final WPI_VictorSPX leftMotor1 = new WPI_VictorSPX(DriveConstants.kLeftMotor1Port);
   private final WPI_VictorSPX leftMotor2 = new WPI_VictorSPX(DriveConstants.kLeftMotor2Port);
   
@@ -51,6 +72,9 @@ public class DriveSubsystem extends SubsystemBase implements AutoCloseable{
 
   private DifferentialDriveOdometry odometry;
   private DifferentialDriveKinematics kinematics;
+  // Characterized on the robot, falls back to the constants if it hasn't been.
+  private final DriveGains gains = DriveGains.load();
+  private final SimpleMotorFeedforward feedforward = gains.getFeedforward();
   private DifferentialDrivePoseEstimator poseEstimator;
   
   private final Encoder leftEncoder = new Encoder(DriveConstants.kEncoderLeftPort1, DriveConstants.kEncoderLeftPort2);
@@ -58,12 +82,60 @@ public class DriveSubsystem extends SubsystemBase implements AutoCloseable{
   
   private final MPU6050 mpu6050;
   private final I2C.Port port;
+  private final TimeInterpolatableBuffer<Double> headingHistory = TimeInterpolatableBuffer.createDoubleBuffer(DriveConstants.kHeadingHistorySeconds);
+  private final GyroDriftCorrector gyroDriftCorrector = new GyroDriftCorrector();
+  private final WheelSlipDetector wheelSlipDetector = new WheelSlipDetector(gains.trackwidthMeters);
+  // The odometry is fed these instead of the encoders, so slipping wheels can be left out.
+  private double odometryLeftDistance;
+  private double odometryRightDistance;
+  private double lastLeftDistance;
+  private double lastRightDistance;
+  // Samples from before the encoders were reset still have the old distances.
+  private double encoderResetTime = Double.NEGATIVE_INFINITY;
+  private SensorSampler sensorSampler;
+  private double lastDriftCorrectionTime;
+  // The pose estimator starts at the origin, so until vision (or a reset) puts it somewhere it's only a guess.
+  private boolean localized;
   
   private final Field2d field;
 
-  private PhotonCameraSystem photonCameraSystem;
+  private final PhotonMultiCameraSystem visionSystem;
+  // Switched from the dashboard's listener thread, so it has to be atomic.
+  private final AtomicReference<PhotonCameraSystem> activeCameraSystem = new AtomicReference<>();
 
   private boolean onExtraLoop;
+
+  private DriveCharacterizationLog characterizationLog;
+  private double leftVoltage;
+  private double rightVoltage;
+  private double leftRate;
+  private double rightRate;
+
+  // Wheel velocity control, run in the fast loop while a command is giving velocities.
+  private final PIDController leftVelocityController = new PIDController(
+    VelocityControlConstants.kP, VelocityControlConstants.kI, VelocityControlConstants.kD, Constants.kFastLoopTime);
+  private final PIDController rightVelocityController = new PIDController(
+    VelocityControlConstants.kP, VelocityControlConstants.kI, VelocityControlConstants.kD, Constants.kFastLoopTime);
+  private boolean velocityControl;
+  private double leftVelocitySetpoint;
+  private double rightVelocitySetpoint;
+  private double leftAccelerationSetpoint;
+  private double rightAccelerationSetpoint;
+  private double lastVelocitySetpointTime;
+
+  // Only used in simulation.
+  private DifferentialDrivetrainSim drivetrainSim;
+  private EncoderSim leftEncoderSim;
+  private EncoderSim rightEncoderSim;
+  private double lastSimTime;
+  private double lastSimLeftPosition;
+  private double lastSimRightPosition;
+  private double simGyroBiasAngle;
+  // The sim heading wraps at 180 degrees, the real gyro doesn't.
+  private double simHeadingDegrees;
+  private Rotation2d lastSimHeading = new Rotation2d();
+  private double lastSimVelocity;
+  private SimulationDisturbances simDisturbances = SimulationDisturbances.NONE;
   
   /**
    * Creates a new DriveSubsystem.
@@ -74,6 +146,7 @@ public class DriveSubsystem extends SubsystemBase implements AutoCloseable{
     this.mpu6050 = new MPU6050(port);
     this.field = field;
     this.onExtraLoop = false;
+    this.lastDriftCorrectionTime = Timer.getFPGATimestamp();
     calibrateGyro();
     resetEncoders();
 
@@ -89,18 +162,42 @@ public class DriveSubsystem extends SubsystemBase implements AutoCloseable{
     rightEncoder.setReverseDirection(DriveConstants.kEncoderRightReversed);
 
     // Setup the odometry
-    this.odometry = new DifferentialDriveOdometry(getGyroRotation2d(), getLeftEncoderDistance(), getRightEncoderDistance());
-    this.kinematics = DriveConstants.kDriveKinematics;
-    photonCameraSystem = new PhotonCameraSystem();
-    var estimatedPose = photonCameraSystem.getEstimatedGlobalPose(new Pose2d());
+    this.odometry = new DifferentialDriveOdometry(getGyroRotation2d(), odometryLeftDistance, odometryRightDistance);
+    this.kinematics = gains.getKinematics();
+    // Both cameras estimate poses at the same time, the active one is used for targetting.
+    visionSystem = new PhotonMultiCameraSystem(new PhotonVisionConstants.New_PiCamera(), new PhotonVisionConstants.New_WideCamera());
+    activeCameraSystem.set(visionSystem.getCameraSystems().get(0));
+    // The vision thread will pull us to the right pose as soon as it sees a tag.
     poseEstimator =
       new DifferentialDrivePoseEstimator(
         kinematics,
         getGyroRotation2d(),
-        getLeftEncoderDistance(),
-        getRightEncoderDistance(),
-        estimatedPose.isEmpty() ? new Pose2d() : estimatedPose.get().estimatedPose.toPose2d()
+        odometryLeftDistance,
+        odometryRightDistance,
+        new Pose2d()
         );
+
+    if (RobotBase.isSimulation()) {
+      setupSimulation();
+    }
+  }
+
+  private void setupSimulation() {
+    // Use the same model the feedforward was fitted to, so the simulated robot drives like the real one.
+    drivetrainSim = new DifferentialDrivetrainSim(
+      LinearSystemId.identifyDrivetrainSystem(
+        gains.kvVoltSecondsPerMeter,
+        gains.kaVoltSecondsSquaredPerMeter,
+        gains.kvVoltSecondsPerMeter,
+        gains.kaVoltSecondsSquaredPerMeter),
+      DCMotor.getCIM(DrivetrainSimConstants.kMotorsPerSide),
+      DrivetrainSimConstants.kGearing,
+      kinematics.trackWidthMeters,
+      DrivetrainSimConstants.kWheelRadiusMeters,
+      null);
+    leftEncoderSim = new EncoderSim(leftEncoder);
+    rightEncoderSim = new EncoderSim(rightEncoder);
+    lastSimTime = Timer.getFPGATimestamp();
   }
 
   @Override
@@ -115,28 +212,204 @@ public class DriveSubsystem extends SubsystemBase implements AutoCloseable{
     leftEncoder.close();
     rightEncoder.close();
     mpu6050.close();
+    visionSystem.close();
+    CommandScheduler.getInstance().unregisterSubsystem(this);
   }
 
   @Override
   public void periodic() {
-    if (!onExtraLoop) mpu6050.update();
+    periodicSection.time(periodicBody);
+  }
+
+  private void periodicImpl() {
+    // The odometry runs in the fast loop, unless there isn't one.
+    if (!onExtraLoop) fastUpdate();
     
-    Pose2d pose = odometry.update(getGyroRotation2d(), getLeftEncoderDistance(), getRightEncoderDistance());
-    var photonPose = photonCameraSystem.getEstimatedGlobalPose(pose);
-    if (photonPose.isPresent()) {
-      poseEstimator.addVisionMeasurement(photonPose.get().estimatedPose.toPose2d(), photonPose.get().timestampSeconds);
+    // The vision filter compares new poses against our best guess, so give it the fused pose.
+    visionSystem.setReferencePose(poseEstimator.getEstimatedPosition(), localized);
+    // Add every frame the cameras finished since the last loop, each one only once and with its own std devs.
+    VisionMeasurement visionMeasurement;
+    while ((visionMeasurement = visionSystem.pollMeasurement()) != null) {
+      // Lean on vision more while the wheels can't be trusted.
+      var stdDevs = wheelSlipDetector.getState() == WheelSlipDetector.State.GRIP
+        ? visionMeasurement.stdDevs
+        : visionMeasurement.stdDevs.times(wheelSlipDetector.getVisionStdDevScale());
+      poseEstimator.addVisionMeasurement(visionMeasurement.pose, visionMeasurement.timestampSeconds, stdDevs);
+      localized = true;
+      addDriftMeasurement(visionMeasurement);
     }
-    // Update the odometry in the periodic block
-    pose = poseEstimator.update(getGyroRotation2d(), getLeftEncoderDistance(), getRightEncoderDistance());
+    correctGyroDrift();
+    Pose2d pose = poseEstimator.getEstimatedPosition();
     
     // Update the field Using the odometry data
     field.setRobotPose(pose.getX(), pose.getY(), pose.getRotation());
+  }
+
+  /**
+   * Puts the field and the sensor readings on the dashboard.
+   * <p>Nothing on the robot reads these, so it runs as a slow low priority task instead of every loop.<p>
+   */
+  public void publishTelemetry() {
     SmartDashboard.putData(field);
     if (is_debug) {
       dashboardDebug();
     }
   }
 
+  /**
+   * Moves the odometry by how far the wheels went, less while they are slipping.
+   * Every sensor is read once, so the gyro and the encoders line up with the same timestamp.
+   */
+  private void updateOdometry(double timestamp) {
+    double left;
+    double right;
+    var samples = sensorSampler != null ? sensorSampler.getBuffer() : null;
+    if (samples != null && !samples.isEmpty() && samples.getTimestamp(0) >= encoderResetTime) {
+      // Both encoders from the same instant, with the time the FPGA took them.
+      timestamp = samples.getTimestamp(0);
+      left = samples.getLeftDistance(0);
+      right = samples.getRightDistance(0);
+    } else {
+      left = getLeftEncoderDistance();
+      right = getRightEncoderDistance();
+    }
+    leftRate = getLeftEncoderRate();
+    rightRate = getRightEncoderRate();
+    Rotation2d gyroRotation = getGyroRotation2d();
+    wheelSlipDetector.update(timestamp, leftRate, rightRate, getRotationRate(), mpu6050.getUnfilteredAccelX());
+    double weight = wheelSlipDetector.getOdometryWeight();
+    odometryLeftDistance += (left - lastLeftDistance) * weight;
+    odometryRightDistance += (right - lastRightDistance) * weight;
+    lastLeftDistance = left;
+    lastRightDistance = right;
+
+    // Short steps keep the arc approximation right in fast turns.
+    odometry.update(gyroRotation, odometryLeftDistance, odometryRightDistance);
+    poseEstimator.updateWithTime(timestamp, gyroRotation, odometryLeftDistance, odometryRightDistance);
+
+    if (characterizationLog != null) {
+      characterizationLog.add(timestamp, leftVoltage, rightVoltage, left, right, leftRate, rightRate, getAngle());
+    }
+  }
+
+  @Override
+  public void simulationPeriodic() {
+    double now = Timer.getFPGATimestamp();
+    double dt = now - lastSimTime;
+    lastSimTime = now;
+    if (dt <= 0) return;
+
+    // The motor groups remember what they were set to, right is already un-inverted.
+    double batteryVoltage = RobotController.getBatteryVoltage();
+    boolean enabled = DriverStation.isEnabled();
+    double leftVoltage = enabled ? leftMotorsGroup.get() * batteryVoltage : 0;
+    double rightVoltage = enabled ? rightMotorsGroup.get() * batteryVoltage : 0;
+    drivetrainSim.setInputs(
+      removeStaticFriction(leftVoltage),
+      removeStaticFriction(rightVoltage));
+    drivetrainSim.update(dt);
+
+    // Move the encoders by how much the wheels moved, so resetEncoders() still works.
+    double leftPosition = drivetrainSim.getLeftPositionMeters();
+    double rightPosition = drivetrainSim.getRightPositionMeters();
+    // Slipping wheels spin further than the robot moves.
+    double leftScale = 1 + simDisturbances.leftWheelSlip;
+    double rightScale = 1 + simDisturbances.rightWheelSlip;
+    leftEncoderSim.setDistance(leftEncoder.getDistance() + (leftPosition - lastSimLeftPosition) * leftScale);
+    rightEncoderSim.setDistance(rightEncoder.getDistance() + (rightPosition - lastSimRightPosition) * rightScale);
+    lastSimLeftPosition = leftPosition;
+    lastSimRightPosition = rightPosition;
+    leftEncoderSim.setRate(drivetrainSim.getLeftVelocityMetersPerSecond() * leftScale);
+    rightEncoderSim.setRate(drivetrainSim.getRightVelocityMetersPerSecond() * rightScale);
+
+    // The sim is counterclockwise positive, the gyro is clockwise positive.
+    double turnRate = (drivetrainSim.getRightVelocityMetersPerSecond() - drivetrainSim.getLeftVelocityMetersPerSecond()) / kinematics.trackWidthMeters;
+    simGyroBiasAngle += simDisturbances.gyroBiasDegreesPerSecond * dt;
+    simHeadingDegrees += drivetrainSim.getHeading().minus(lastSimHeading).getDegrees();
+    lastSimHeading = drivetrainSim.getHeading();
+    mpu6050.setSimulatedAngle(-simHeadingDegrees + simGyroBiasAngle);
+    mpu6050.setSimulatedRate(-Math.toDegrees(turnRate) + simDisturbances.gyroBiasDegreesPerSecond);
+    // The accelerometer feels the real robot, not the slipping wheels.
+    double velocity = (drivetrainSim.getLeftVelocityMetersPerSecond() + drivetrainSim.getRightVelocityMetersPerSecond()) / 2;
+    mpu6050.setSimulatedAccelX((velocity - lastSimVelocity) / dt);
+    lastSimVelocity = velocity;
+  }
+
+  /**
+   * Moves the simulated robot, and resets the odometry and pose estimator to match. Does nothing on the real robot.
+   * @param pose Where to put the robot.
+   */
+  public void setSimulationPose(Pose2d pose) {
+    if (drivetrainSim == null) return;
+    // This also zeroes the simulated wheel positions.
+    drivetrainSim.setPose(pose);
+    lastSimLeftPosition = 0;
+    lastSimRightPosition = 0;
+    simHeadingDegrees = pose.getRotation().getDegrees();
+    lastSimHeading = pose.getRotation();
+    mpu6050.setSimulatedAngle(-simHeadingDegrees + simGyroBiasAngle);
+    lastSimVelocity = 0;
+    resetOdometry(pose);
+    poseEstimator.resetPosition(getGyroRotation2d(), odometryLeftDistance, odometryRightDistance, pose);
+    localized = true;
+  }
+
+  /**
+   * Makes the simulated sensors less than perfect, does nothing on the real robot.
+   * @param disturbances The wheel slip and gyro bias to simulate.
+   */
+  public void setSimulationDisturbances(SimulationDisturbances disturbances) {
+    simDisturbances = disturbances;
+  }
+
+  /**
+   * The sim has no static friction, so take off the voltage the real robot needs just to start moving.
+   */
+  private double removeStaticFriction(double voltage) {
+    double ks = gains.ksVolts;
+    if (Math.abs(voltage) <= ks) return 0;
+    return voltage - Math.copySign(ks, voltage);
+  }
+
+  /**
+   * Returns where the simulated robot really is, which is what the simulated cameras see.
+   * @return The pose of the drivetrain simulation, or the estimated pose when not simulating.
+   */
+  public Pose2d getSimulatedPose() {
+    return drivetrainSim != null ? drivetrainSim.getPose() : getEstimatedPose();
+  }
+
+  private void addDriftMeasurement(VisionMeasurement visionMeasurement) {
+    addDriftMeasurement(
+      visionMeasurement.timestampSeconds,
+      visionMeasurement.pose.getRotation().getRadians(),
+      visionMeasurement.estimatedRobotPose.targetsUsed.size(),
+      visionMeasurement.stdDevs.get(2, 0));
+  }
+
+  /**
+   * Gives a vision heading to the gyro drift corrector, if it's good enough.
+   * @param timestampSeconds The time the frame was taken.
+   * @param visionHeadingRadians The heading of the vision pose.
+   * @param tagCount How many tags were used for the pose.
+   * @param headingStdDev The heading standard deviation the {@link VisionMeasurementFilter} gave the pose.
+   * @return true if the heading was used.
+   */
+  public boolean addDriftMeasurement(double timestampSeconds, double visionHeadingRadians, int tagCount, double headingStdDev) {
+    if (!GyroDriftCorrector.isUsable(tagCount, headingStdDev, getRotationRate())) return false;
+    gyroDriftCorrector.addMeasurement(timestampSeconds, visionHeadingRadians, getAngleAt(timestampSeconds));
+    return true;
+  }
+
+  private void correctGyroDrift() {
+    double now = Timer.getFPGATimestamp();
+    double dt = now - lastDriftCorrectionTime;
+    lastDriftCorrectionTime = now;
+    // A small step every loop, so everything using getAngle() sees a smooth change.
+    mpu6050.setAngle_offset(mpu6050.getAngle_offset() + gyroDriftCorrector.takeAngleCorrection(dt));
+    mpu6050.setRate_offset(mpu6050.getRate_offset() + gyroDriftCorrector.takeRateCorrection());
+  }
+
   private void dashboardDebug() {
     SmartDashboard.putNumber("Rotation offset", mpu6050.getRate_offset());
     
@@ -154,6 +427,7 @@ public class DriveSubsystem extends SubsystemBase implements AutoCloseable{
     
     SmartDashboard.putNumber("Left Encoder Distance", getLeftEncoderDistance());
     SmartDashboard.putNumber("Right Encoder Distance", getRightEncoderDistance());
+    SmartDashboard.putString("Wheel Traction", wheelSlipDetector.getState().name());
   }
 
   /**
@@ -162,6 +436,7 @@ public class DriveSubsystem extends SubsystemBase implements AutoCloseable{
    * @param rightMotorSpeed double between -1 and 1
    */
   public void setMotors(double leftMotorSpeed, double rightMotorSpeed) {
+    velocityControl = false;
     leftMotorsGroup.set(leftMotorSpeed);
     rightMotorsGroup.set(rightMotorSpeed);
   }
@@ -172,6 +447,13 @@ public class DriveSubsystem extends SubsystemBase implements AutoCloseable{
    * @param rightVoltage Double between -12 and 12
    */
   public void setMotorVoltage(double leftVoltage, double rightVoltage) {
+    velocityControl = false;
+    applyVoltage(leftVoltage, rightVoltage);
+  }
+
+  private void applyVoltage(double leftVoltage, double rightVoltage) {
+    this.leftVoltage = leftVoltage;
+    this.rightVoltage = rightVoltage;
     leftMotorsGroup.setVoltage(leftVoltage);
     rightMotorsGroup.setVoltage(rightVoltage);
     driveTrain.feed();
@@ -183,6 +465,7 @@ public class DriveSubsystem extends SubsystemBase implements AutoCloseable{
    * @param zRotation The robot's rotation rate around the Z axis [-1.0..1.0]. Counterclockwise is positive.
    */
   public void drive(double xSpeed, double zRotation) {
+    velocityControl = false;
     driveTrain.arcadeDrive(-xSpeed, -zRotation);
   }
 
@@ -193,6 +476,7 @@ public class DriveSubsystem extends SubsystemBase implements AutoCloseable{
    * @param squaredInputs If set, decreases the input sensitivity at low speeds.
    */
   public void drive(double xSpeed, double zRotation, boolean squaredInputs) {
+    velocityControl = false;
     driveTrain.arcadeDrive(-xSpeed, -zRotation, squaredInputs);
   }
 
@@ -200,15 +484,35 @@ public class DriveSubsystem extends SubsystemBase implements AutoCloseable{
    * Stops all motors in the drive train
    */
   public void stopMotors() {
+    velocityControl = false;
     driveTrain.stopMotor();
   }
   
+  /**
+   * @return The camera system currently used for targetting.
+   */
   public PhotonCameraSystem getCameraSystem() {
-    return photonCameraSystem;
+    return activeCameraSystem.get();
   }
 
-  public void setCameraSystem(PhotonCameraSystem cameraSystem) {
-    this.photonCameraSystem = cameraSystem;
+  /**
+   * Selects which camera is used for targetting. Every camera keeps updating the pose either way.
+   * <p>All the cameras are already running, so this only swaps a reference and is safe to call from any thread.<p>
+   * @param cameraName The name of the camera, use {@link PhotonVisionConstants.Cameras}
+   * @return false if there is no camera with that name.
+   */
+  public boolean setActiveCamera(String cameraName) {
+    var cameraSystem = visionSystem.getCameraSystem(cameraName);
+    if (cameraSystem.isEmpty()) return false;
+    activeCameraSystem.set(cameraSystem.get());
+    return true;
+  }
+
+  /**
+   * @return The system running every camera on the robot.
+   */
+  public PhotonMultiCameraSystem getVisionSystem() {
+    return visionSystem;
   }
 
   /**
@@ -219,6 +523,44 @@ public class DriveSubsystem extends SubsystemBase implements AutoCloseable{
     return this.odometry.getPoseMeters();
   }
   
+  /**
+   * Returns the position of the robot on the field, with the vision poses added in.
+   * <p>Unlike {@link DriveSubsystem#getPose} this is field relative, and it keeps
+   * working off the encoders and gyro while no tag is in view.<p>
+   * @return The estimated pose of the robot (x and y are in meters).
+   */
+  public Pose2d getEstimatedPose() {
+    return poseEstimator.getEstimatedPosition();
+  }
+
+  /**
+   * @return The feedforward gains and track width being used, see {@link DriveGains}.
+   */
+  public DriveGains getGains() {
+    return gains;
+  }
+
+  /**
+   * @return If the wheels are gripping, slipping, or the robot was hit, see {@link WheelSlipDetector}.
+   */
+  public WheelSlipDetector.State getTractionState() {
+    return wheelSlipDetector.getState();
+  }
+
+  /**
+   * @return The feedforward of the drive wheels, in volts.
+   */
+  public SimpleMotorFeedforward getFeedforward() {
+    return feedforward;
+  }
+
+  /**
+   * @return The kinematics of the drivetrain, with the characterized track width.
+   */
+  public DifferentialDriveKinematics getKinematics() {
+    return kinematics;
+  }
+
   /**
    * Returns a supplier of the position of the robot on the field.
    * @return A supplier of {@link DriveSubsystem#getPose}
@@ -245,7 +587,8 @@ public class DriveSubsystem extends SubsystemBase implements AutoCloseable{
    */
   public void resetOdometry(Pose2d pose) {
     resetEncoders();
-    this.odometry.resetPosition(getGyroRotation2d(), getLeftEncoderDistance(), getRightEncoderDistance(), pose); 
+    wheelSlipDetector.reset();
+    this.odometry.resetPosition(getGyroRotation2d(), odometryLeftDistance, odometryRightDistance, pose); 
   }
   
   /**
@@ -271,6 +614,10 @@ public class DriveSubsystem extends SubsystemBase implements AutoCloseable{
   public void resetEncoders() {
     leftEncoder.reset();
     rightEncoder.reset();
+    encoderResetTime = Timer.getFPGATimestamp();
+    // The odometry only takes how far the encoders moved, so resetting them doesn't move the pose.
+    lastLeftDistance = 0;
+    lastRightDistance = 0;
   }
 
   /**
@@ -337,6 +684,8 @@ public class DriveSubsystem extends SubsystemBase implements AutoCloseable{
    */
   public void resetGyro() {
     mpu6050.reset();
+    // The drift reference was taken with the old zero.
+    gyroDriftCorrector.reset();
   }
 
   /**
@@ -399,30 +748,151 @@ public class DriveSubsystem extends SubsystemBase implements AutoCloseable{
   }
 
   /**
-   * Runs all the calculations to get the angle data, so it's important to run this periodically.
+   * Runs all the calculations to get the angle data and the odometry, so it's important to run this periodically.
+   * <p>Once this is called {@link #periodic()} stops updating them, and only reads the latest pose.<p>
    */
   public void runGyroLoop() {
     onExtraLoop = true;
-    mpu6050.update();    
+    fastUpdate();
+  }
+
+  private void fastUpdate() {
+    double timestamp = Timer.getFPGATimestamp();
+    updateGyro(timestamp);
+    updateOdometry(timestamp);
+    runVelocityControl();
+  }
+
+  private void runVelocityControl() {
+    if (!velocityControl) return;
+    if (DriverStation.isDisabled()) {
+      // Don't drive off to an old setpoint when we're enabled again.
+      velocityControl = false;
+      return;
+    }
+    double left = feedforward.calculate(leftVelocitySetpoint, leftAccelerationSetpoint)
+      + leftVelocityController.calculate(leftRate, leftVelocitySetpoint);
+    double right = feedforward.calculate(rightVelocitySetpoint, rightAccelerationSetpoint)
+      + rightVelocityController.calculate(rightRate, rightVelocitySetpoint);
+    double maxVoltage = RobotController.getBatteryVoltage();
+    applyVoltage(MathUtil.clamp(left, -maxVoltage, maxVoltage), MathUtil.clamp(right, -maxVoltage, maxVoltage));
+  }
+
+  /**
+   * Drives the wheels at the given velocities until another drive method is called.
+   * <p>The feedforward and PID run every fast loop on the encoder rates, so commands only have to give
+   * new velocities every scheduler loop. The acceleration for the feedforward comes from how much the
+   * velocities changed since the last call.<p>
+   * @param leftVelocity The left wheel velocity in meters per second.
+   * @param rightVelocity The right wheel velocity in meters per second.
+   */
+  public void setWheelVelocities(double leftVelocity, double rightVelocity) {
+    double now = Timer.getFPGATimestamp();
+    double dt = now - lastVelocitySetpointTime;
+    if (!velocityControl) {
+      velocityControl = true;
+      leftVelocityController.reset();
+      rightVelocityController.reset();
+      leftAccelerationSetpoint = 0;
+      rightAccelerationSetpoint = 0;
+    } else if (dt > 0) {
+      leftAccelerationSetpoint = (leftVelocity - leftVelocitySetpoint) / dt;
+      rightAccelerationSetpoint = (rightVelocity - rightVelocitySetpoint) / dt;
+    }
+    lastVelocitySetpointTime = now;
+    leftVelocitySetpoint = leftVelocity;
+    rightVelocitySetpoint = rightVelocity;
+  }
+
+  /**
+   * Sets the gains of both wheel velocity controllers, see {@link #setWheelVelocities}.
+   * @param velocityPID The gains, in volts per meter per second.
+   */
+  public void setVelocityGains(PIDConstants velocityPID) {
+    leftVelocityController.setPID(velocityPID.kP, velocityPID.kI, velocityPID.kD);
+    rightVelocityController.setPID(velocityPID.kP, velocityPID.kI, velocityPID.kD);
+  }
+
+  /**
+   * @return true while the wheels are velocity controlled, see {@link #setWheelVelocities}.
+   */
+  public boolean isVelocityControlled() {
+    return velocityControl;
+  }
+
+  /**
+   * Makes the odometry use the encoder distances sampled by the DMA engine, instead of reading the encoders.
+   * The sampler has to be polled before {@link #runGyroLoop()} every fast loop.
+   * @param sensorSampler The sampler of the drive encoders, null to read the encoders directly.
+   */
+  public void setSensorSampler(SensorSampler sensorSampler) {
+    this.sensorSampler = sensorSampler;
+  }
+
+  /**
+   * Starts recording the motor voltages, encoders and gyro into a log every fast loop.
+   * Only the voltages given to {@link #setMotorVoltage} are recorded.
+   * @param log The log to record into.
+   */
+  public void startCharacterizationLog(DriveCharacterizationLog log) {
+    characterizationLog = log;
+  }
+
+  /**
+   * Stops recording into the characterization log.
+   */
+  public void stopCharacterizationLog() {
+    characterizationLog = null;
+  }
+
+  private void updateGyro(double timestamp) {
+    mpu6050.update();
+    headingHistory.addSample(timestamp, mpu6050.getAngle());
+  }
+
+  /**
+   * Gets what the gyro angle was at a time in the recent past, used to line up camera frames with the gyro.
+   * @param timestampSeconds The FPGA time to get the angle at.
+   * @return the yaw angle (Z axis) in degrees at that time, or the current angle if we don't remember that far back.
+   */
+  public double getAngleAt(double timestampSeconds) {
+    var angle = headingHistory.getSample(timestampSeconds);
+    return angle.isPresent() ? angle.get() : getAngle();
   }
 
   public Command pathFollowCommand() {
-    PathPlannerTrajectory traj = PathPlanner.loadPath("Foward.path", new PathConstraints(3, 2));
+    return pathFollowCommand(getDefaultVelocityGains());
+  }
+
+  /**
+   * Follows the foward path with the given wheel speed gains.
+   * @param wheelPID The gains of the fast loop wheel velocity controllers while following the path.
+   * @return The path following command.
+   */
+  public Command pathFollowCommand(PIDConstants wheelPID) {
+    PathPlannerTrajectory traj = loadFowardPath();
     
     return new PPRamseteCommand(
       traj, 
       this::getPose, // Pose supplier
       new RamseteController(),
-      new SimpleMotorFeedforward(DriveConstants.FeedForwardConstants.ksVolts,
-        DriveConstants.FeedForwardConstants.kvVoltSecondsPerMeter,
-        DriveConstants.FeedForwardConstants.kaVoltSecondsSquaredPerMeter),
       this.kinematics, // DifferentialDriveKinematics
-      this::getWheelSpeeds, // DifferentialDriveWheelSpeeds supplier
-      new PIDController(0, 0, 0), // Left controller. Tune these values for your robot. Leaving them 0 will only use feedforwards.
-      new PIDController(0, 0, 0), // Right controller (usually the same values as left controller)
-      this::setMotorVoltage, // Voltage biconsumer
+      this::setWheelVelocities, // The wheel speeds are held in the fast loop
       true, // Should the path be automatically mirrored depending on alliance color. Optional, defaults to true
       this // Requires this drive subsystem
-    );
+    )
+      .beforeStarting(() -> setVelocityGains(wheelPID))
+      .finallyDo(interrupted -> setVelocityGains(getDefaultVelocityGains()));
+  }
+
+  private static PIDConstants getDefaultVelocityGains() {
+    return new PIDConstants(VelocityControlConstants.kP, VelocityControlConstants.kI, VelocityControlConstants.kD);
+  }
+
+  /**
+   * @return The path {@link #pathFollowCommand()} follows, before it is mirrored for the alliance.
+   */
+  public static PathPlannerTrajectory loadFowardPath() {
+    return PathPlanner.loadPath("Foward.path", new PathConstraints(3, 2));
   }
 }
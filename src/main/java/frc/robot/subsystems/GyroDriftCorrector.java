@@ -0,0 +1,113 @@
+package frc.robot.subsystems;
+
+import edu.wpi.first.math.MathUtil;
+import frc.robot.Constants.DriveConstants.GyroDriftConstants;
+
+/**
+ * Uses the heading from multi tag vision poses to slowly take the drift out of the gyro.
+ * <p>The gyro only integrates its rate, so any bias left after calibration adds up over a match.
+ * The first good vision heading is taken as the reference, after that any change between
+ * the vision heading and the gyro heading is drift, and is given back as a correction to the angle offset.
+ * If the drift keeps growing at the same speed it's also given back as a correction to the rate offset.<p>
+ * <p>Gyro angles are in degrees clockwise positive, vision headings are in radians counterclockwise positive.<p>
+ */
+public class GyroDriftCorrector {
+    private boolean hasReference;
+    private double reference;
+    private double pendingCorrection;
+
+    private double windowStartTime;
+    private double windowCorrection;
+    private int windowMeasurements;
+    private double pendingRateCorrection;
+
+    /**
+     * Forgets the reference, call this whenever the gyro is reset.
+     */
+    public void reset() {
+        hasReference = false;
+        pendingCorrection = 0;
+        pendingRateCorrection = 0;
+    }
+
+    /**
+     * Checks if a vision heading is good enough to correct the gyro with.
+     * @param tagCount How many tags were used for the pose.
+     * @param headingStdDev The heading standard deviation of the pose in radians.
+     * @param gyroRate How fast the robot was turning in degrees per second.
+     * @return true if the heading can be used.
+     */
+    public static boolean isUsable(int tagCount, double headingStdDev, double gyroRate) {
+        return tagCount >= GyroDriftConstants.kMinTags
+            && headingStdDev <= GyroDriftConstants.kMaxHeadingStdDevRadians
+            && Math.abs(gyroRate) <= GyroDriftConstants.kMaxRotationRateDegrees;
+    }
+
+    /**
+     * Adds a vision heading, check it with {@link #isUsable} first.
+     * @param timestampSeconds The time the frame was taken.
+     * @param visionHeadingRadians The heading of the vision pose.
+     * @param gyroAngleAtFrame The gyro angle at the time the frame was taken.
+     */
+    public void addMeasurement(double timestampSeconds, double visionHeadingRadians, double gyroAngleAtFrame) {
+        // Stays the same as long as the gyro doesn't drift.
+        double sum = Math.toDegrees(visionHeadingRadians) + gyroAngleAtFrame;
+        if (!hasReference) {
+            hasReference = true;
+            reference = sum;
+            startWindow(timestampSeconds);
+            return;
+        }
+        // Positive means the gyro reads too far clockwise.
+        double drift = MathUtil.inputModulus(sum - reference, -180, 180);
+        // The corrections still waiting to be applied are part of this drift too, so only queue what they don't cover.
+        // Only take part of that, frames are noisy.
+        double correction = (drift - pendingCorrection) * GyroDriftConstants.kCorrectionGain;
+        pendingCorrection += correction;
+        windowCorrection += correction;
+        windowMeasurements++;
+
+        double windowTime = timestampSeconds - windowStartTime;
+        if (windowTime >= GyroDriftConstants.kBiasWindowSeconds) {
+            if (windowMeasurements >= GyroDriftConstants.kMinBiasMeasurements) {
+                pendingRateCorrection += windowCorrection / windowTime * GyroDriftConstants.kBiasGain;
+            }
+            startWindow(timestampSeconds);
+        }
+    }
+
+    /**
+     * Takes the part of the angle offset correction that should be applied this loop.
+     * @param dt The time since the last call in seconds.
+     * @return How much to add to the gyro's angle offset in degrees.
+     */
+    public double takeAngleCorrection(double dt) {
+        double maxStep = GyroDriftConstants.kMaxCorrectionRateDegrees * dt;
+        double step = MathUtil.clamp(pendingCorrection, -maxStep, maxStep);
+        pendingCorrection -= step;
+        return step;
+    }
+
+    /**
+     * Takes the rate offset correction found since the last call.
+     * @return How much to add to the gyro's rate offset in degrees per second.
+     */
+    public double takeRateCorrection() {
+        double correction = pendingRateCorrection;
+        pendingRateCorrection = 0;
+        return correction;
+    }
+
+    /**
+     * @return true once a good vision heading has been seen since the last reset.
+     */
+    public boolean hasReference() {
+        return hasReference;
+    }
+
+    private void startWindow(double timestampSeconds) {
+        windowStartTime = timestampSeconds;
+        windowCorrection = 0;
+        windowMeasurements = 0;
+    }
+}
@@ -3,17 +3,24 @@ package frc.robot.subsystems;
 import com.revrobotics.CANSparkMax;
 import com.revrobotics.CANSparkMaxLowLevel;
 
+import edu.wpi.first.wpilibj.AnalogInput;
 import edu.wpi.first.wpilibj.AnalogPotentiometer;
 import edu.wpi.first.wpilibj.motorcontrol.Spark;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import frc.robot.Constants.IntakeConstants;
+import frc.robot.utils.LoopProfiler;
 
 public class IntakeArmSubsystem extends SubsystemBase implements AutoCloseable{
+    private final LoopProfiler.Section periodicSection = LoopProfiler.section("IntakeArmSubsystem.periodic");
+    private final Runnable periodicBody = this::periodicImpl;
 
     public static final CANSparkMax IntakeArmMotor = new CANSparkMax(IntakeConstants.kCanIntakeArmMotor1Port, CANSparkMaxLowLevel.MotorType.kBrushed);
     public static final Spark IntakeArmMotor2 = new Spark(IntakeConstants.kCanIntakeArmMotor2Port);
-    public static final AnalogPotentiometer IntakeArmPot = new AnalogPotentiometer(IntakeConstants.kIntakeArmPotPort);
+    // The input is kept so the SensorSampler can sample it.
+    public static final AnalogInput IntakeArmPotInput = new AnalogInput(IntakeConstants.kIntakeArmPotPort);
+    public static final AnalogPotentiometer IntakeArmPot = new AnalogPotentiometer(IntakeArmPotInput);
     
     public IntakeArmSubsystem() {
         IntakeArmMotor.setInverted(true);
@@ -21,11 +28,16 @@ public class IntakeArmSubsystem extends SubsystemBase implements AutoCloseable{
 
     @Override
     public void close() throws Exception {
-        // don't do anything because the tests fail for some reason whenever the motors are closed.
+        // don't close the motors because the tests fail for some reason whenever the motors are closed.
+        CommandScheduler.getInstance().unregisterSubsystem(this);
     }
 
     @Override
     public void periodic() {
+        periodicSection.time(periodicBody);
+    }
+
+    private void periodicImpl() {
         SmartDashboard.putNumber("Potantiometer", getArmPos());
     }
     public void setMotors(double speed) {
@@ -1,9 +1,13 @@
 package frc.robot.subsystems;
 
-import java.io.IOException;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.photonvision.EstimatedRobotPose;
 import org.photonvision.PhotonCamera;
@@ -11,11 +15,13 @@ import org.photonvision.PhotonPoseEstimator;
 import org.photonvision.PhotonUtils;
 import org.photonvision.PhotonPoseEstimator.PoseStrategy;
 import org.photonvision.common.hardware.VisionLEDMode;
+import org.photonvision.targeting.PhotonPipelineResult;
 import org.photonvision.targeting.PhotonTrackedTarget;
 
-import edu.wpi.first.apriltag.AprilTagFieldLayout;
-import edu.wpi.first.apriltag.AprilTagFields;
 import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.networktables.NetworkTableEvent;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.RawSubscriber;
 import edu.wpi.first.wpilibj.DriverStation;
 import frc.robot.Constants.PhotonVisionConstants;
 import frc.robot.abstract_classes.CameraInterface;
@@ -24,12 +30,44 @@ import frc.robot.abstract_classes.CameraInterface;
 /**
  * This class is used to interface with the PhotonCamera and PhotonPoseEstimator classes.
  * It is used to get the robot's pose on the field Using only AprilTags.
+ * <p>Pose estimation runs on its own thread that wakes up whenever PhotonVision publishes a new frame,
+ * so the main loop only has to drain the finished poses with {@link #pollMeasurement()}.
+ * After {@link #useSynchronousProcessing()} the thread is stopped and frames are only processed when
+ * {@link #processNewFrame()} is called, which the simulation uses to get the same poses on every run.<p>
+ * <p>Each frame is only decoded once, every accessor reads from the same cached {@link PhotonPipelineResult}.
+ * Use {@link #getLatestFrame()} to get a result together with its sequence number, to tell if a new frame
+ * has come in since you last looked.<p>
  */
-public class PhotonCameraSystem {
+public class PhotonCameraSystem implements AutoCloseable {
     private PhotonCamera camera;
     public CameraInterface cameraDetails;
     private PhotonPoseEstimator photonPoseEstimator;
 
+    private final Object cameraLock = new Object();
+    private final Object estimatorLock = new Object();
+
+    private final RawSubscriber rawBytesSubscriber;
+    private final int frameListenerHandle;
+    private final Semaphore newFrameSignal = new Semaphore(0);
+    private final ConcurrentLinkedQueue<VisionMeasurement> measurements = new ConcurrentLinkedQueue<>();
+    private final VisionMeasurementFilter measurementFilter;
+    private final AtomicInteger queuedPoseCount = new AtomicInteger();
+    private final Thread visionThread;
+
+    private volatile boolean running;
+    private boolean synchronous;
+    private volatile Pose2d referencePose = new Pose2d();
+    private volatile boolean referenceLocalized;
+    private double lastFrameTimestamp = -1;
+
+    // The result, its sequence number and when it was published are swapped together, so they always match.
+    private volatile DecodedFrame latestFrame = new DecodedFrame(new PhotonPipelineResult(), 0, -1);
+    private int lastProcessedSequence = 0;
+
+    // Only written by the vision thread.
+    private volatile int frameCount = 0;
+    private volatile double latencyMillis = 0;
+
     /**
      * This is used to get the robot's pose on the field using only AprilTags.
      * @param cameraDetails The camera details that will be used to get the robot's pose.
@@ -38,7 +76,24 @@ public class PhotonCameraSystem {
     public PhotonCameraSystem(CameraInterface cameraDetails) {
         this.cameraDetails = cameraDetails;
         camera = new PhotonCamera(cameraDetails.getCameraName());
-        photonPoseEstimator = getPhotonPoseEstimator();
+        // The pose estimator is made once the field layout is loaded, so startup doesn't wait for it.
+        measurementFilter = new VisionMeasurementFilter(cameraDetails.getVisionStdDevScale());
+
+        // Subscribe to the same topic PhotonCamera reads from, so we get an event for every new frame.
+        var instance = NetworkTableInstance.getDefault();
+        rawBytesSubscriber = instance.getTable(PhotonVisionConstants.kPhotonVisionTableName)
+            .getSubTable(cameraDetails.getCameraName())
+            .getRawTopic("rawBytes")
+            .subscribe("rawBytes", new byte[] {});
+        frameListenerHandle = instance.addListener(
+            rawBytesSubscriber,
+            EnumSet.of(NetworkTableEvent.Kind.kValueAll),
+            event -> newFrameSignal.release());
+
+        running = true;
+        visionThread = new Thread(this::visionLoop, "PhotonVision " + cameraDetails.getCameraName());
+        visionThread.setDaemon(true);
+        visionThread.start();
     }
 
     /**
@@ -49,22 +104,180 @@ public class PhotonCameraSystem {
         this(new PhotonVisionConstants.New_PiCamera());
     }
 
-    private PhotonPoseEstimator getPhotonPoseEstimator() {
+    /**
+     * Stops the vision thread and removes the NetworkTables listener.
+     */
+    @Override
+    public void close() {
+        running = false;
+        visionThread.interrupt();
+        NetworkTableInstance.getDefault().removeListener(frameListenerHandle);
+        rawBytesSubscriber.close();
+    }
+
+    /**
+     * Stops the vision thread, from then on a frame is only processed when {@link #processNewFrame()} is called.
+     * <p>Which loop a pose lands in then only depends on when the caller processes it, not on the thread timing.<p>
+     */
+    public void useSynchronousProcessing() {
+        if (synchronous) return;
+        synchronous = true;
+        running = false;
+        visionThread.interrupt();
         try {
-            // Attempt to load the AprilTagFieldLayout that will tell us where the tags are on the field.
-            AprilTagFieldLayout fieldLayout = AprilTagFields.k2023ChargedUp.loadAprilTagLayoutField();
-            // Create pose estimator
-            photonPoseEstimator =
-                    new PhotonPoseEstimator(
-                            fieldLayout, PoseStrategy.MULTI_TAG_PNP, camera, cameraDetails.getRobotToCam());
-            photonPoseEstimator.setMultiTagFallbackStrategy(PoseStrategy.LOWEST_AMBIGUITY);
-            System.out.println("Loaded PhotonPoseEstimator");
-        } catch (IOException e) {
-            // The AprilTagFieldLayout failed to load. We won't be able to estimate poses if we don't know
-            // where the tags are.
-            DriverStation.reportError("Failed to load AprilTagFieldLayout", e.getStackTrace());
-            photonPoseEstimator = null;
+            // Wait for it to finish the frame it's on, only one thread may process frames.
+            visionThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Estimates the pose from the latest frame on the calling thread, if it's a frame we haven't processed yet.
+     * The pose is then queued for {@link #pollMeasurement()} just like the vision thread would.
+     * <p>Only call this after {@link #useSynchronousProcessing()}, otherwise the vision thread does it.<p>
+     */
+    public void processNewFrame() {
+        if (!synchronous) {
+            throw new IllegalStateException("The vision thread of " + cameraDetails.getCameraName() + " is still processing frames");
+        }
+        processLatestFrame();
+    }
+
+    private void visionLoop() {
+        long timeoutMillis = (long) (PhotonVisionConstants.kFramePollTimeoutSeconds * 1000);
+        while (running) {
+            try {
+                // Wait for a new frame, but check every so often in case we missed an event.
+                newFrameSignal.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS);
+                newFrameSignal.drainPermits();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            try {
+                processLatestFrame();
+            } catch (RuntimeException e) {
+                // Don't let one bad frame kill the thread.
+                DriverStation.reportError("Vision thread error on " + cameraDetails.getCameraName() + ": " + e.getMessage(), e.getStackTrace());
+            }
         }
+    }
+
+    private void processLatestFrame() {
+        var frame = getLatestFrame();
+        if (frame.sequence == lastProcessedSequence) return;
+        lastProcessedSequence = frame.sequence;
+        PhotonPipelineResult result = frame.result;
+        double timestamp = result.getTimestampSeconds();
+        // We already handled this frame, don't add the same measurement twice.
+        if (timestamp == lastFrameTimestamp) return;
+        lastFrameTimestamp = timestamp;
+        frameCount++;
+        latencyMillis = result.getLatencyMillis();
+        if (!result.hasTargets()) return;
+
+        Pose2d reference = referencePose;
+        boolean localized = referenceLocalized;
+        Optional<EstimatedRobotPose> estimatedPose;
+        synchronized (estimatorLock) {
+            if (photonPoseEstimator == null && getPhotonPoseEstimator() == null) return;
+            photonPoseEstimator.setReferencePose(reference);
+            estimatedPose = photonPoseEstimator.update(result);
+        }
+        if (estimatedPose.isEmpty()) return;
+        // Work out how much to trust this pose, or throw it away if it doesn't make sense.
+        var stdDevs = measurementFilter.getStdDevs(estimatedPose.get(), localized ? reference : null);
+        if (stdDevs.isEmpty()) return;
+        offerMeasurement(new VisionMeasurement(estimatedPose.get(), stdDevs.get(), cameraDetails.getCameraName()));
+    }
+
+    private void offerMeasurement(VisionMeasurement measurement) {
+        measurements.offer(measurement);
+        // If nobody is draining the queue, drop the oldest poses instead of growing forever.
+        if (queuedPoseCount.incrementAndGet() > PhotonVisionConstants.kMaxQueuedPoses && measurements.poll() != null) {
+            queuedPoseCount.decrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the latest frame from the camera, decoding it only if PhotonVision published a new one.
+     * <p>Every other accessor reads from this, so if you need more than one value from the same frame
+     * call this once and read everything from the result.<p>
+     * @return The latest {@link PhotonPipelineResult}, do not modify it as it is shared.
+     */
+    public PhotonPipelineResult getLatestResult() {
+        return getLatestFrame().result;
+    }
+
+    /**
+     * Goes up by one every time a new frame is decoded.
+     * <p>To get a result and its sequence number from the same frame use {@link #getLatestFrame()}.<p>
+     * @return The sequence number of the latest frame.
+     */
+    public int getResultSequence() {
+        return getLatestFrame().sequence;
+    }
+
+    /**
+     * Returns the latest frame together with its sequence number, decoding it only if PhotonVision published a new one.
+     * @return The latest {@link DecodedFrame}.
+     */
+    public DecodedFrame getLatestFrame() {
+        var frame = latestFrame;
+        if (rawBytesSubscriber.getLastChange() != frame.changeTime) {
+            frame = decodeLatestFrame();
+        }
+        return frame;
+    }
+
+    private DecodedFrame decodeLatestFrame() {
+        // PhotonCamera reuses one packet buffer, and we only want one thread decoding each frame anyway.
+        synchronized (cameraLock) {
+            var frame = latestFrame;
+            long changeTime = rawBytesSubscriber.getLastChange();
+            if (changeTime == frame.changeTime) return frame;
+            frame = new DecodedFrame(camera.getLatestResult(), frame.sequence + 1, changeTime);
+            latestFrame = frame;
+            return frame;
+        }
+    }
+
+    /**
+     * A decoded frame and its sequence number, never changed after it's made.
+     */
+    public static final class DecodedFrame {
+        /** The frame, do not modify it as it is shared. */
+        public final PhotonPipelineResult result;
+        /** Goes up by one for every new frame. */
+        public final int sequence;
+        private final long changeTime;
+
+        private DecodedFrame(PhotonPipelineResult result, int sequence, long changeTime) {
+            this.result = result;
+            this.sequence = sequence;
+            this.changeTime = changeTime;
+        }
+    }
+
+    /**
+     * Makes the pose estimator if the field layout has loaded, call it with the {@code estimatorLock} held.
+     * @return The new pose estimator, or null if the layout is still loading or failed to load.
+     */
+    private PhotonPoseEstimator getPhotonPoseEstimator() {
+        // The layout is loaded once and shared, it tells us where the tags are on the field.
+        var fieldLayout = AprilTagFieldCache.getLayoutIfLoaded();
+        if (fieldLayout.isEmpty()) {
+            // The AprilTagFieldLayout is still loading, or failed to load (the error is already reported).
+            // We won't be able to estimate poses until we know where the tags are.
+            return null;
+        }
+        // Create pose estimator
+        photonPoseEstimator =
+                new PhotonPoseEstimator(
+                        fieldLayout.get(), PoseStrategy.MULTI_TAG_PNP, camera, cameraDetails.getRobotToCam());
+        photonPoseEstimator.setMultiTagFallbackStrategy(PoseStrategy.LOWEST_AMBIGUITY);
+        System.out.println("Loaded PhotonPoseEstimator");
         return photonPoseEstimator;
     }
 
@@ -87,7 +300,7 @@ public class PhotonCameraSystem {
      * If no target is found, it will return 0 (I have no clue what the units are)
      */
     public double getPitch() {
-        var latestResult = camera.getLatestResult();
+        var latestResult = getLatestResult();
         if (latestResult.hasTargets()) {
             return latestResult.getBestTarget().getPitch();
         }
@@ -100,7 +313,7 @@ public class PhotonCameraSystem {
      * If no target is found, it will return 0. (I have no clue what the units are)
     */
     public double getYaw() {
-        var latestResult = camera.getLatestResult();
+        var latestResult = getLatestResult();
         if (latestResult.hasTargets()) {
             return latestResult.getBestTarget().getYaw();
         }
@@ -112,7 +325,7 @@ public class PhotonCameraSystem {
      * @return the area percantage (0 to 100) of the camera fov.
      */
     public double getArea() {
-        var latestResult = camera.getLatestResult();
+        var latestResult = getLatestResult();
         if (latestResult.hasTargets()) {
             return latestResult.getBestTarget().getArea();
         }
@@ -123,7 +336,7 @@ public class PhotonCameraSystem {
      * @return The current id of the best april tag being tracked. If no tag is being tracked, it will return -1.
      */
     public int getCurrentAprilTagID() {
-        var latestResult = camera.getLatestResult();
+        var latestResult = getLatestResult();
         if (latestResult.hasTargets()) {
             return latestResult.getBestTarget().getFiducialId();
         }
@@ -135,10 +348,11 @@ public class PhotonCameraSystem {
     */
     public List<Integer> getTrackedTargetsIDs() {
         List<Integer> ids = new ArrayList<>();
+        var latestResult = getLatestResult();
         // If there are no targets, return an empty array.
-        if (!camera.getLatestResult().hasTargets()) return ids;
+        if (!latestResult.hasTargets()) return ids;
         // Get the ids of each target.
-        var targets = camera.getLatestResult().getTargets();
+        var targets = latestResult.getTargets();
         for (var target : targets) {
             ids.add(target.getFiducialId());
         }
@@ -146,7 +360,7 @@ public class PhotonCameraSystem {
     }
 
     public List<PhotonTrackedTarget> getTrackedTargets() {
-        return camera.getLatestResult().getTargets();
+        return getLatestResult().getTargets();
     }
     
     /**
@@ -157,17 +371,81 @@ public class PhotonCameraSystem {
         camera.setLED(state);
     }
 
+    /**
+     * Selects which pipeline the coprocessor runs for this camera.
+     * @param index The index of the pipeline, see {@link PhotonVisionConstants.VisionWorkloadConstants}
+     */
+    public void setPipelineIndex(int index) {
+        camera.setPipelineIndex(index);
+    }
+
+    /**
+     * Turns driver mode on or off, in driver mode the coprocessor only streams the camera.
+     * @param driverMode true to stop processing frames.
+     */
+    public void setDriverMode(boolean driverMode) {
+        camera.setDriverMode(driverMode);
+    }
+
+    /**
+     * @return How many new frames the vision thread has seen, used to work out the frame rate.
+     */
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * @return The latency PhotonVision reported for the last new frame, in milliseconds.
+     */
+    public double getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    /**
+     * Sets the pose the vision thread (or {@link #processNewFrame()}) will use as the reference for the next estimates.
+     * @param pose The current best guess of the robot's pose, usually the odometry pose.
+     * @param localized false if the pose is only a guess (nothing has told us where we are yet),
+     * then single tag poses aren't checked against it.
+     */
+    public void setReferencePose(Pose2d pose, boolean localized) {
+        referencePose = pose;
+        referenceLocalized = localized;
+    }
+
+    /**
+     * Takes the oldest pose the vision thread has estimated since the last call.
+     * Call this in a loop until it returns null to get every new frame.
+     * @return The next {@link VisionMeasurement}, or null if there are no new frames.
+     */
+    public VisionMeasurement pollMeasurement() {
+        var measurement = measurements.poll();
+        if (measurement != null) queuedPoseCount.decrementAndGet();
+        return measurement;
+    }
+
+    /**
+     * Looks at the oldest pose the vision thread has estimated without taking it.
+     * @return The next {@link VisionMeasurement}, or null if there are no new frames.
+     */
+    public VisionMeasurement peekMeasurement() {
+        return measurements.peek();
+    }
+
     /**
      * Returns the robot's pose on the field If found. If not found, it will return empty.
+     * <p>This runs the pose estimation on the calling thread, prefer {@link #pollMeasurement()} in loops.<p>
      * @param prevEstimatedRobotPose  .
      * @return The new {@link EstimatedRobotPose} To get {@link Pose2d} use {@code EstimatedRobotPose.get().estimatedPose.toPose2d()}.
      */
     public Optional<EstimatedRobotPose> getEstimatedGlobalPose(Pose2d prevEstimatedRobotPose) {
-        if (photonPoseEstimator == null) {
-            // The field layout failed to load, so we cannot estimate poses.
-            return Optional.empty();
+        var latestResult = getLatestResult();
+        synchronized (estimatorLock) {
+            if (photonPoseEstimator == null && getPhotonPoseEstimator() == null) {
+                // The field layout is still loading or failed to load, so we cannot estimate poses.
+                return Optional.empty();
+            }
+            photonPoseEstimator.setReferencePose(prevEstimatedRobotPose);
+            return photonPoseEstimator.update(latestResult);
         }
-        photonPoseEstimator.setReferencePose(prevEstimatedRobotPose);
-        return photonPoseEstimator.update();
     }
 }   
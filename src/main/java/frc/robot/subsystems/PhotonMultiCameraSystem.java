@@ -0,0 +1,106 @@
+package frc.robot.subsystems;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import frc.robot.abstract_classes.CameraInterface;
+
+/**
+ * Runs a {@link PhotonCameraSystem} for every camera on the robot at the same time.
+ * Each camera estimates poses on its own thread, this just hands them to the drive subsystem oldest first.
+ */
+public class PhotonMultiCameraSystem implements AutoCloseable {
+    private final PhotonCameraSystem[] cameraSystems;
+    private final List<PhotonCameraSystem> cameraSystemList;
+    private final Map<String, PhotonCameraSystem> cameraSystemsByName = new HashMap<>();
+
+    /**
+     * Starts a camera system for each of the given cameras.
+     * @param cameras The details of every camera on the robot, the first one is the default camera.
+     */
+    public PhotonMultiCameraSystem(CameraInterface... cameras) {
+        if (cameras.length == 0) {
+            throw new IllegalArgumentException("At least one camera is needed");
+        }
+        cameraSystems = new PhotonCameraSystem[cameras.length];
+        for (int i = 0; i < cameras.length; i++) {
+            cameraSystems[i] = new PhotonCameraSystem(cameras[i]);
+            cameraSystemsByName.put(cameras[i].getCameraName(), cameraSystems[i]);
+        }
+        cameraSystemList = List.of(cameraSystems);
+    }
+
+    @Override
+    public void close() {
+        for (var cameraSystem : cameraSystems) {
+            cameraSystem.close();
+        }
+    }
+
+    /**
+     * Stops every camera's vision thread, see {@link PhotonCameraSystem#useSynchronousProcessing()}.
+     */
+    public void useSynchronousProcessing() {
+        for (var cameraSystem : cameraSystems) {
+            cameraSystem.useSynchronousProcessing();
+        }
+    }
+
+    /**
+     * Processes the new frame of every camera on the calling thread, see {@link PhotonCameraSystem#processNewFrame()}.
+     */
+    public void processNewFrames() {
+        for (var cameraSystem : cameraSystems) {
+            cameraSystem.processNewFrame();
+        }
+    }
+
+    /**
+     * @return Every camera system, in the order the cameras were given.
+     */
+    public List<PhotonCameraSystem> getCameraSystems() {
+        return cameraSystemList;
+    }
+
+    /**
+     * Finds the camera system of a camera.
+     * @param cameraName The name of the camera, use {@link frc.robot.Constants.PhotonVisionConstants.Cameras}
+     * @return The camera system, or empty if we don't have that camera.
+     */
+    public Optional<PhotonCameraSystem> getCameraSystem(String cameraName) {
+        if (cameraName == null) return Optional.empty();
+        return Optional.ofNullable(cameraSystemsByName.get(cameraName));
+    }
+
+    /**
+     * Sets the pose every camera's vision thread will use as the reference for the next estimates.
+     * @param pose The current best guess of the robot's pose.
+     * @param localized false if the pose is only a guess, see {@link PhotonCameraSystem#setReferencePose(Pose2d, boolean)}.
+     */
+    public void setReferencePose(Pose2d pose, boolean localized) {
+        for (var cameraSystem : cameraSystems) {
+            cameraSystem.setReferencePose(pose, localized);
+        }
+    }
+
+    /**
+     * Takes the oldest new measurement from any of the cameras.
+     * Call this in a loop until it returns null to get every new frame from every camera.
+     * @return The oldest {@link VisionMeasurement}, or null if no camera has a new frame.
+     */
+    public VisionMeasurement pollMeasurement() {
+        PhotonCameraSystem oldestCamera = null;
+        double oldestTimestamp = Double.POSITIVE_INFINITY;
+        for (var cameraSystem : cameraSystems) {
+            var measurement = cameraSystem.peekMeasurement();
+            if (measurement != null && measurement.timestampSeconds < oldestTimestamp) {
+                oldestTimestamp = measurement.timestampSeconds;
+                oldestCamera = cameraSystem;
+            }
+        }
+        return oldestCamera == null ? null : oldestCamera.pollMeasurement();
+    }
+}
@@ -1,6 +1,5 @@
 package frc.robot.subsystems;
 
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
@@ -13,8 +12,6 @@ import org.photonvision.PhotonPoseEstimator.PoseStrategy;
 import org.photonvision.common.hardware.VisionLEDMode;
 
 import frc.robot.Constants.PhotonVisionConstants;
-import edu.wpi.first.apriltag.AprilTagFieldLayout;
-import edu.wpi.first.apriltag.AprilTagFields;
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Transform3d;
 import edu.wpi.first.wpilibj.DriverStation;
@@ -338,21 +335,19 @@ public class PhotonVisionSubsystem extends SubsystemBase {
 
 
     private PhotonPoseEstimator getPhotonPoseEstimator() {
-        try {
-            // Attempt to load the AprilTagFieldLayout that will tell us where the tags are on the field.
-            AprilTagFieldLayout fieldLayout = AprilTagFields.k2023ChargedUp.loadAprilTagLayoutField();
-            // Create pose estimator
-            photonPoseEstimator =
-                    new PhotonPoseEstimator(
-                            fieldLayout, PoseStrategy.MULTI_TAG_PNP, camera, getCurrentTransform3d());
-            photonPoseEstimator.setMultiTagFallbackStrategy(PoseStrategy.LOWEST_AMBIGUITY);
-            System.out.println("Loaded PhotonPoseEstimator");
-        } catch (IOException e) {
-            // The AprilTagFieldLayout failed to load. We won't be able to estimate poses if we don't know
-            // where the tags are.
-            DriverStation.reportError("Failed to load AprilTagFieldLayout", e.getStackTrace());
-            photonPoseEstimator = null;
+        // The layout is loaded once and shared, it tells us where the tags are on the field.
+        var fieldLayout = AprilTagFieldCache.getLayout();
+        if (fieldLayout.isEmpty()) {
+            // The AprilTagFieldLayout failed to load (the error is already reported).
+            // We won't be able to estimate poses if we don't know where the tags are.
+            return null;
         }
+        // Create pose estimator
+        photonPoseEstimator =
+                new PhotonPoseEstimator(
+                        fieldLayout.get(), PoseStrategy.MULTI_TAG_PNP, camera, getCurrentTransform3d());
+        photonPoseEstimator.setMultiTagFallbackStrategy(PoseStrategy.LOWEST_AMBIGUITY);
+        System.out.println("Loaded PhotonPoseEstimator");
         return photonPoseEstimator;
     }
         
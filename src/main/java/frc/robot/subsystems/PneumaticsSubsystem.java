@@ -3,6 +3,7 @@ package frc.robot.subsystems;
 import edu.wpi.first.wpilibj.Compressor;
 import edu.wpi.first.wpilibj.DoubleSolenoid;
 import edu.wpi.first.wpilibj.PneumaticsModuleType;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import frc.robot.Constants.PneumaticsConstants;
 
@@ -22,6 +23,7 @@ public class PneumaticsSubsystem extends SubsystemBase implements AutoCloseable{
     public void close() throws Exception {
         compressor.close();
         doubleSolenoid.close();
+        CommandScheduler.getInstance().unregisterSubsystem(this);
     }
 
     public void setCompressor(boolean state) {
@@ -2,11 +2,15 @@ package frc.robot.subsystems;
 
 import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.motorcontrol.Spark;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import frc.robot.Constants.IntakeConstants;
+import frc.robot.utils.LoopProfiler;
 
 
 public class RedlineIntakeSubsystem extends SubsystemBase implements AutoCloseable{
+    private final LoopProfiler.Section periodicSection = LoopProfiler.section("RedlineIntakeSubsystem.periodic");
+    private final Runnable periodicBody = this::periodicImpl;
     private final Spark redline; 
     
     public RedlineIntakeSubsystem() {
@@ -15,6 +19,10 @@ public class RedlineIntakeSubsystem extends SubsystemBase implements AutoCloseab
 
     @Override
     public void periodic() {
+        periodicSection.time(periodicBody);
+    }
+
+    private void periodicImpl() {
         if (!redline.isAlive()) {
             DriverStation.reportError("Redline Motor is not alive", false);
         }
@@ -37,6 +45,7 @@ public class RedlineIntakeSubsystem extends SubsystemBase implements AutoCloseab
     @Override
     public void close() {
         redline.close();
+        CommandScheduler.getInstance().unregisterSubsystem(this);
     }
 
 }
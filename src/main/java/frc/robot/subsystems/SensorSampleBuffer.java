@@ -0,0 +1,98 @@
+package frc.robot.subsystems;
+
+/**
+ * The last few sensor samples taken together by the {@link SensorSampler}, newest first.
+ * <p>Every sample is stored in primitive arrays that are made once, so adding one never allocates.
+ * Samples are read by age, 0 is the newest.<p>
+ */
+public class SensorSampleBuffer {
+    private final double[] timestamps;
+    private final double[] leftDistances;
+    private final double[] rightDistances;
+    private final double[] potVoltages;
+    private final int[] digitalInputs;
+    private int newest = -1;
+    private int size;
+    private long totalSamples;
+
+    /**
+     * @param capacity How many samples to keep, older ones are overwritten.
+     */
+    public SensorSampleBuffer(int capacity) {
+        timestamps = new double[capacity];
+        leftDistances = new double[capacity];
+        rightDistances = new double[capacity];
+        potVoltages = new double[capacity];
+        digitalInputs = new int[capacity];
+    }
+
+    /**
+     * Adds a sample, overwriting the oldest one if the buffer is full.
+     * @param timestampSeconds The FPGA time the sample was taken.
+     * @param leftDistance The left drive encoder distance in meters.
+     * @param rightDistance The right drive encoder distance in meters.
+     * @param potVoltage The intake arm potentiometer voltage.
+     * @param digitalInputs The raw value of each digital input, bit i is input i.
+     */
+    public void add(double timestampSeconds, double leftDistance, double rightDistance, double potVoltage, int digitalInputs) {
+        newest = (newest + 1) % timestamps.length;
+        timestamps[newest] = timestampSeconds;
+        leftDistances[newest] = leftDistance;
+        rightDistances[newest] = rightDistance;
+        potVoltages[newest] = potVoltage;
+        this.digitalInputs[newest] = digitalInputs;
+        size = Math.min(size + 1, timestamps.length);
+        totalSamples++;
+    }
+
+    /**
+     * @return How many samples can be read.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return How many samples were ever added, to tell if new ones came in.
+     */
+    public long getTotalSamples() {
+        return totalSamples;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public double getTimestamp(int age) {
+        return timestamps[index(age)];
+    }
+
+    public double getLeftDistance(int age) {
+        return leftDistances[index(age)];
+    }
+
+    public double getRightDistance(int age) {
+        return rightDistances[index(age)];
+    }
+
+    public double getPotVoltage(int age) {
+        return potVoltages[index(age)];
+    }
+
+    /**
+     * @param age How many samples back, 0 is the newest.
+     * @param input The index of the digital input, in the order given to the {@link SensorSampler}.
+     * @return The raw value of the input, like {@link edu.wpi.first.wpilibj.DigitalInput#get()}.
+     */
+    public boolean getDigitalInput(int age, int input) {
+        return (digitalInputs[index(age)] & (1 << input)) != 0;
+    }
+
+    private int index(int age) {
+        if (age < 0 || age >= size) {
+            throw new IndexOutOfBoundsException("No sample " + age + " samples back, only " + size + " are kept");
+        }
+        int i = newest - age;
+        return i < 0 ? i + timestamps.length : i;
+    }
+}
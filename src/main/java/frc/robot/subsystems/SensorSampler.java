@@ -0,0 +1,132 @@
+package frc.robot.subsystems;
+
+import edu.wpi.first.wpilibj.AnalogInput;
+import edu.wpi.first.wpilibj.DMA;
+import edu.wpi.first.wpilibj.DMASample;
+import edu.wpi.first.wpilibj.DigitalInput;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Encoder;
+import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj.Timer;
+import frc.robot.Constants.SensorSamplerConstants;
+
+/**
+ * Samples the drive encoders, the intake arm potentiometer and the limit switches at the same instant.
+ * <p>On the robot the DMA engine in the FPGA takes a sample of every sensor every
+ * {@link SensorSamplerConstants#kSamplePeriodSeconds} with a hardware timestamp, and {@link #poll()}
+ * reads all the samples it queued with one call each, instead of one JNI call per sensor.
+ * The simulator has no DMA engine, so there {@link #poll()} reads the sensors one by one instead.<p>
+ * <p>The sensors still belong to their subsystems, this only reads them.<p>
+ */
+public class SensorSampler implements AutoCloseable {
+    private static final int kMaxDigitalInputs = Integer.SIZE;
+
+    private final Encoder leftEncoder;
+    private final Encoder rightEncoder;
+    private final AnalogInput armPot;
+    private final DigitalInput[] digitalInputs;
+    private final SensorSampleBuffer buffer = new SensorSampleBuffer(SensorSamplerConstants.kBufferSize);
+
+    private final DMA dma;
+    private final DMASample dmaSample;
+    private boolean reportedError;
+
+    /**
+     * Starts sampling.
+     * @param leftEncoder The left drive encoder.
+     * @param rightEncoder The right drive encoder.
+     * @param armPot The intake arm potentiometer.
+     * @param digitalInputs The limit switches, read back by index from {@link SensorSampleBuffer#getDigitalInput}.
+     */
+    public SensorSampler(Encoder leftEncoder, Encoder rightEncoder, AnalogInput armPot, DigitalInput... digitalInputs) {
+        if (digitalInputs.length > kMaxDigitalInputs) {
+            throw new IllegalArgumentException("At most " + kMaxDigitalInputs + " digital inputs can be sampled");
+        }
+        this.leftEncoder = leftEncoder;
+        this.rightEncoder = rightEncoder;
+        this.armPot = armPot;
+        this.digitalInputs = digitalInputs;
+
+        if (RobotBase.isReal()) {
+            dma = new DMA();
+            dma.addEncoder(leftEncoder);
+            dma.addEncoder(rightEncoder);
+            dma.addAnalogInput(armPot);
+            for (var input : digitalInputs) {
+                dma.addDigitalSource(input);
+            }
+            dma.setTimedTrigger(SensorSamplerConstants.kSamplePeriodSeconds);
+            dma.start(SensorSamplerConstants.kDmaQueueDepth);
+            dmaSample = new DMASample();
+        } else {
+            dma = null;
+            dmaSample = null;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (dma != null) {
+            dma.stop();
+            dma.close();
+        }
+    }
+
+    /**
+     * Moves every new sample into the buffer, call this at the start of every fast loop.
+     * @return How many new samples there were.
+     */
+    public int poll() {
+        if (dma == null) {
+            buffer.add(Timer.getFPGATimestamp(), leftEncoder.getDistance(), rightEncoder.getDistance(),
+                armPot.getVoltage(), readDigitalInputs());
+            return 1;
+        }
+        int count = 0;
+        // Never wait, anything not ready yet is read next loop.
+        while (count < SensorSamplerConstants.kDmaQueueDepth) {
+            var status = dmaSample.update(dma, 0);
+            if (status != DMASample.DMAReadStatus.kOk) {
+                if (status == DMASample.DMAReadStatus.kError && !reportedError) {
+                    reportedError = true;
+                    DriverStation.reportError("Failed to read the DMA samples", false);
+                }
+                break;
+            }
+            int inputs = 0;
+            for (int i = 0; i < digitalInputs.length; i++) {
+                if (dmaSample.getDigitalSource(digitalInputs[i])) inputs |= 1 << i;
+            }
+            buffer.add(dmaSample.getTimeStamp(),
+                dmaSample.getEncoderDistance(leftEncoder),
+                dmaSample.getEncoderDistance(rightEncoder),
+                dmaSample.getAnalogInputVoltage(armPot),
+                inputs);
+            count++;
+            if (dmaSample.getRemaining() == 0) break;
+        }
+        return count;
+    }
+
+    /**
+     * @return The samples read so far, newest first.
+     */
+    public SensorSampleBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * @return true if the samples come from the DMA engine, false if the sensors are read one by one.
+     */
+    public boolean isUsingDma() {
+        return dma != null;
+    }
+
+    private int readDigitalInputs() {
+        int inputs = 0;
+        for (int i = 0; i < digitalInputs.length; i++) {
+            if (digitalInputs[i].get()) inputs |= 1 << i;
+        }
+        return inputs;
+    }
+}
@@ -6,10 +6,14 @@ import edu.wpi.first.wpilibj.DigitalInput;
 import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.motorcontrol.Spark;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import frc.robot.Constants.VerticalElevatorConstants;
+import frc.robot.utils.LoopProfiler;
 
 public class VerticalElevatorSubsystem extends SubsystemBase implements AutoCloseable{
+    private final LoopProfiler.Section periodicSection = LoopProfiler.section("VerticalElevatorSubsystem.periodic");
+    private final Runnable periodicBody = this::periodicImpl;
 
     private final Spark elevatorMotor;
     private final DigitalInput toplimitSwitch = new DigitalInput(0);
@@ -32,10 +36,15 @@ public class VerticalElevatorSubsystem extends SubsystemBase implements AutoClos
         elevatorMotor.close();
         toplimitSwitch.close();
         bottomlimitSwitch.close();
+        CommandScheduler.getInstance().unregisterSubsystem(this);
     }
 
     @Override
     public void periodic() {
+        periodicSection.time(periodicBody);
+    }
+
+    private void periodicImpl() {
         if (topLimitSwitchTemp != getTopLimitSwitch()) {
             topLimitSwitchTemp = getTopLimitSwitch();
             SmartDashboard.putBoolean("Top Limit Switch", getTopLimitSwitch());
@@ -80,6 +89,15 @@ public class VerticalElevatorSubsystem extends SubsystemBase implements AutoClos
     public BooleanSupplier getTopLimitSwitchSupplier() {
         return this::getTopLimitSwitch;
     }
+
+    /**
+     * Gets the top limit switch input, for the {@link SensorSampler}.
+     * The switch is pressed when the input is false.
+     * @return The top limit switch input.
+     */
+    public DigitalInput getTopLimitSwitchInput() {
+        return toplimitSwitch;
+    }
     
     public boolean getBottomLimitSwitch() {
         return !bottomlimitSwitch.get();
@@ -88,6 +106,15 @@ public class VerticalElevatorSubsystem extends SubsystemBase implements AutoClos
     public BooleanSupplier getBottomLimitSwitchSupplier() {
         return this::getBottomLimitSwitch;
     }
+
+    /**
+     * Gets the bottom limit switch input, for the {@link SensorSampler}.
+     * The switch is pressed when the input is false.
+     * @return The bottom limit switch input.
+     */
+    public DigitalInput getBottomLimitSwitchInput() {
+        return bottomlimitSwitch;
+    }
     
     public void moveUp() {
         if (getTopLimitSwitch()) {
@@ -0,0 +1,29 @@
+package frc.robot.subsystems;
+
+import org.photonvision.EstimatedRobotPose;
+
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N3;
+
+/**
+ * A robot pose estimated from one camera frame, ready to be added to the drive pose estimator.
+ */
+public class VisionMeasurement {
+    public final EstimatedRobotPose estimatedRobotPose;
+    public final Pose2d pose;
+    /** The FPGA time the frame was captured at, in seconds. */
+    public final double timestampSeconds;
+    /** The x (meters), y (meters) and heading (radians) standard deviations of this measurement. */
+    public final Matrix<N3, N1> stdDevs;
+    public final String cameraName;
+
+    public VisionMeasurement(EstimatedRobotPose estimatedRobotPose, Matrix<N3, N1> stdDevs, String cameraName) {
+        this.estimatedRobotPose = estimatedRobotPose;
+        this.pose = estimatedRobotPose.estimatedPose.toPose2d();
+        this.timestampSeconds = estimatedRobotPose.timestampSeconds;
+        this.stdDevs = stdDevs;
+        this.cameraName = cameraName;
+    }
+}
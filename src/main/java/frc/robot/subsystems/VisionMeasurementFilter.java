@@ -0,0 +1,115 @@
+package frc.robot.subsystems;
+
+import java.util.Optional;
+
+import org.photonvision.EstimatedRobotPose;
+
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.VecBuilder;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N3;
+import frc.robot.Constants.PhotonVisionConstants.VisionFilterConstants;
+
+/**
+ * Decides how much to trust a vision pose, or if it should be thrown away.
+ * <p>Poses from more tags are trusted more, poses from far away or ambiguous tags are trusted less.
+ * Poses that are off the field, in the air, or (for one tag) too far from where we think we are get rejected.
+ * Until we know where we are, single tag poses are taken wherever they are.<p>
+ * <p>Each camera has its own filter, as the buffers are not shared between threads.<p>
+ */
+public class VisionMeasurementFilter {
+    private static final int kMaxTags = 16;
+
+    private final double stdDevScale;
+    private final int[] tagIds = new int[kMaxTags];
+    private final double[] stdDevs = new double[3];
+
+    /**
+     * @param stdDevScale How much less we trust this camera than the base trust, see
+     * {@link frc.robot.abstract_classes.CameraInterface#getVisionStdDevScale()}
+     */
+    public VisionMeasurementFilter(double stdDevScale) {
+        this.stdDevScale = stdDevScale;
+    }
+
+    /**
+     * Calculates the standard deviations of a pose from the {@link org.photonvision.PhotonPoseEstimator}.
+     * @param estimatedPose The estimated pose.
+     * @param referencePose Where we currently think the robot is, null if we don't know yet.
+     * @return The x, y and heading standard deviations, or empty if the pose should be thrown away.
+     */
+    public Optional<Matrix<N3, N1>> getStdDevs(EstimatedRobotPose estimatedPose, Pose2d referencePose) {
+        var targets = estimatedPose.targetsUsed;
+        int tagCount = Math.min(targets.size(), kMaxTags);
+        double ambiguity = 0;
+        for (int i = 0; i < tagCount; i++) {
+            var target = targets.get(i);
+            tagIds[i] = target.getFiducialId();
+            ambiguity = Math.max(ambiguity, target.getPoseAmbiguity());
+        }
+        var pose = estimatedPose.estimatedPose;
+        if (!calculateStdDevs(pose.getX(), pose.getY(), pose.getZ(), tagIds, tagCount, ambiguity,
+                referencePose != null ? referencePose.getX() : Double.NaN,
+                referencePose != null ? referencePose.getY() : Double.NaN, stdDevs)) {
+            return Optional.empty();
+        }
+        return Optional.of(VecBuilder.fill(stdDevs[0], stdDevs[1], stdDevs[2]));
+    }
+
+    /**
+     * Calculates the standard deviations of a vision pose.
+     * @param x The X of the estimated pose in meters.
+     * @param y The Y of the estimated pose in meters.
+     * @param z The height of the estimated pose in meters.
+     * @param tagIds The fiducial ids of the tags used for the pose.
+     * @param tagCount How many of the ids in {@code tagIds} to use.
+     * @param ambiguity The highest pose ambiguity of the tags, only used for single tag poses.
+     * @param referenceX The X of where we currently think the robot is, NaN if we don't know yet.
+     * @param referenceY The Y of where we currently think the robot is, NaN if we don't know yet.
+     * @param stdDevsOut Filled with the x, y and heading standard deviations if the pose is accepted.
+     * @return false if the pose should be thrown away.
+     */
+    public boolean calculateStdDevs(double x, double y, double z, int[] tagIds, int tagCount, double ambiguity,
+            double referenceX, double referenceY, double[] stdDevsOut) {
+        // Poses off the field or up in the air are wrong no matter how many tags we saw.
+        double margin = VisionFilterConstants.kFieldMarginMeters;
+        double fieldLength = AprilTagFieldCache.getFieldLength();
+        double fieldWidth = AprilTagFieldCache.getFieldWidth();
+        if (x < -margin || y < -margin || x > fieldLength + margin || y > fieldWidth + margin) return false;
+        if (Math.abs(z) > VisionFilterConstants.kMaxHeightMeters) return false;
+
+        int knownTags = 0;
+        double totalDistance = 0;
+        for (int i = 0; i < tagCount; i++) {
+            int id = tagIds[i];
+            if (!AprilTagFieldCache.hasTag(id)) continue;
+            double dx = AprilTagFieldCache.getTagX(id) - x;
+            double dy = AprilTagFieldCache.getTagY(id) - y;
+            double dz = AprilTagFieldCache.getTagZ(id) - z;
+            totalDistance += Math.sqrt(dx * dx + dy * dy + dz * dz);
+            knownTags++;
+        }
+        if (knownTags == 0) return false;
+        double averageDistance = totalDistance / knownTags;
+
+        double scale = stdDevScale * (1 + averageDistance * averageDistance / VisionFilterConstants.kDistanceScaleMetersSquared);
+        double[] baseStdDevs = VisionFilterConstants.kMultiTagStdDevs;
+        if (knownTags == 1) {
+            // A single tag can flip between two poses, so only take it if it's close, clear and where we expect.
+            if (ambiguity > VisionFilterConstants.kMaxAmbiguity) return false;
+            if (averageDistance > VisionFilterConstants.kMaxSingleTagDistanceMeters) return false;
+            // Comparing against a pose we never really knew would reject every tag but the ones near it.
+            if (!Double.isNaN(referenceX) && Math.hypot(x - referenceX, y - referenceY) > VisionFilterConstants.kMaxPoseJumpMeters) {
+                return false;
+            }
+            baseStdDevs = VisionFilterConstants.kSingleTagStdDevs;
+            scale *= 1 + Math.max(ambiguity, 0) / VisionFilterConstants.kMaxAmbiguity;
+        }
+
+        for (int i = 0; i < 3; i++) {
+            stdDevsOut[i] = baseStdDevs[i] * scale;
+        }
+        return true;
+    }
+}
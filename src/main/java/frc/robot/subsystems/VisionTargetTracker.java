@@ -0,0 +1,128 @@
+package frc.robot.subsystems;
+
+import frc.robot.Constants.PhotonVisionConstants.TrackerConstants;
+
+/**
+ * Keeps track of a vision target between camera frames.
+ * <p>Frames come in slower than the robot loop and are already old when they arrive,
+ * so the yaw of the target is moved by how much the robot turned since the frame was taken.
+ * The area, which the forward controller drives on, is smoothed with a small Kalman filter.<p>
+ * <p>Headings are in degrees, clockwise positive like {@link DriveSubsystem#getAngle()}.
+ * Yaw is in degrees, right positive like PhotonVision.<p>
+ */
+public class VisionTargetTracker {
+    private final ScalarKalmanFilter areaFilter =
+        new ScalarKalmanFilter(TrackerConstants.kAreaProcessNoise, TrackerConstants.kAreaMeasurementNoise);
+
+    private double frameYaw;
+    private double frameHeading;
+    private double frameTimestamp = Double.NEGATIVE_INFINITY;
+
+    /**
+     * Forgets the target, call this when starting to track a new one.
+     */
+    public void reset() {
+        areaFilter.reset();
+        frameTimestamp = Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * Adds a new frame of the target.
+     * @param timestampSeconds The time the frame was taken.
+     * @param yawDegrees The yaw of the target in that frame.
+     * @param area The area of the target in that frame.
+     * @param headingAtFrameDegrees The robot's heading at the time the frame was taken.
+     */
+    public void addObservation(double timestampSeconds, double yawDegrees, double area, double headingAtFrameDegrees) {
+        // Frames can't go back in time, if they do it's the same (or a stale) frame.
+        if (timestampSeconds <= frameTimestamp) return;
+        double dt = hasObservation() ? timestampSeconds - frameTimestamp : 0;
+        frameTimestamp = timestampSeconds;
+        frameYaw = yawDegrees;
+        frameHeading = headingAtFrameDegrees;
+        areaFilter.update(area, dt);
+    }
+
+    /**
+     * @param nowSeconds The current time.
+     * @return true if we saw the target recently enough to keep following it.
+     */
+    public boolean hasTarget(double nowSeconds) {
+        return hasObservation() && nowSeconds - frameTimestamp <= TrackerConstants.kTargetTimeoutSeconds;
+    }
+
+    /**
+     * Predicts where the target is now, using how much the robot turned since the last frame.
+     * @param currentHeadingDegrees The robot's current heading.
+     * @return The predicted yaw of the target in degrees.
+     */
+    public double getPredictedYaw(double currentHeadingDegrees) {
+        if (!hasObservation()) return 0;
+        return frameYaw - (currentHeadingDegrees - frameHeading);
+    }
+
+    /**
+     * @return The filtered area of the target, 0 if we haven't seen it.
+     */
+    public double getArea() {
+        return areaFilter.hasEstimate() ? areaFilter.getEstimate() : 0;
+    }
+
+    /**
+     * @return The time the last frame of the target was taken.
+     */
+    public double getLastFrameTimestamp() {
+        return frameTimestamp;
+    }
+
+    private boolean hasObservation() {
+        return frameTimestamp != Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * A one state Kalman filter, the value is assumed to stay the same with some random drift.
+     */
+    private static class ScalarKalmanFilter {
+        private final double processNoise;
+        private final double measurementNoise;
+        private double estimate;
+        private double variance;
+        private boolean hasEstimate;
+
+        /**
+         * @param processNoise How much the value drifts, variance per second.
+         * @param measurementNoise The variance of a single measurement.
+         */
+        ScalarKalmanFilter(double processNoise, double measurementNoise) {
+            this.processNoise = processNoise;
+            this.measurementNoise = measurementNoise;
+        }
+
+        void reset() {
+            hasEstimate = false;
+        }
+
+        void update(double measurement, double dt) {
+            if (!hasEstimate) {
+                estimate = measurement;
+                variance = measurementNoise;
+                hasEstimate = true;
+                return;
+            }
+            // Predict
+            variance += processNoise * dt;
+            // Correct
+            double gain = variance / (variance + measurementNoise);
+            estimate += gain * (measurement - estimate);
+            variance *= 1 - gain;
+        }
+
+        boolean hasEstimate() {
+            return hasEstimate;
+        }
+
+        double getEstimate() {
+            return estimate;
+        }
+    }
+}
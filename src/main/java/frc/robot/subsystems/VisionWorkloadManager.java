@@ -0,0 +1,145 @@
+package frc.robot.subsystems;
+
+import java.util.List;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.robot.Constants.PhotonVisionConstants.VisionWorkloadConstants;
+import frc.robot.abstract_classes.VisionConsumer;
+import frc.robot.abstract_classes.VisionMode;
+import frc.robot.utils.LoopProfiler;
+import frc.robot.utils.ProfiledCommand;
+
+/**
+ * Switches each camera's pipeline depending on the match phase and the command driving the robot.
+ * <p>Full AprilTag detection is only run when something needs it (auto, or a {@link VisionConsumer} command),
+ * the rest of the time the cameras run a low resolution pipeline or just stream to the driver,
+ * which keeps the coprocessor cool and the frame latency low.<p>
+ * <p>The frame rate and latency of every camera is put on the dashboard under "Vision/".<p>
+ */
+public class VisionWorkloadManager extends SubsystemBase implements AutoCloseable {
+    private final LoopProfiler.Section periodicSection = LoopProfiler.section("VisionWorkloadManager.periodic");
+    private final Runnable periodicBody = this::periodicImpl;
+    private final DriveSubsystem driveSubsystem;
+    private final List<PhotonCameraSystem> cameraSystems;
+    private final VisionMode[] currentModes;
+    private final int[] lastFrameCounts;
+    private final String[] dashboardPrefixes;
+    private double lastStatsTime;
+
+    /**
+     * @param driveSubsystem The drive subsystem, its cameras are managed and its current command is checked.
+     */
+    public VisionWorkloadManager(DriveSubsystem driveSubsystem) {
+        this.driveSubsystem = driveSubsystem;
+        this.cameraSystems = driveSubsystem.getVisionSystem().getCameraSystems();
+        int cameraCount = cameraSystems.size();
+        currentModes = new VisionMode[cameraCount];
+        lastFrameCounts = new int[cameraCount];
+        dashboardPrefixes = new String[cameraCount];
+        for (int i = 0; i < cameraCount; i++) {
+            dashboardPrefixes[i] = "Vision/" + cameraSystems.get(i).cameraDetails.getCameraName() + "/";
+        }
+        lastStatsTime = Timer.getFPGATimestamp();
+    }
+
+    @Override
+    public void close() {
+        CommandScheduler.getInstance().unregisterSubsystem(this);
+    }
+
+    @Override
+    public void periodic() {
+        periodicSection.time(periodicBody);
+    }
+
+    private void periodicImpl() {
+        VisionMode requiredMode = getRequiredMode();
+        for (int i = 0; i < currentModes.length; i++) {
+            var cameraSystem = cameraSystems.get(i);
+            VisionMode mode = requiredMode != null ? requiredMode : getDefaultMode(cameraSystem);
+            // Only send it when it changes, the coprocessor reconfigures the camera every time.
+            if (mode != currentModes[i]) {
+                setMode(cameraSystem, mode);
+                currentModes[i] = mode;
+                SmartDashboard.putString(dashboardPrefixes[i] + "Mode", mode.name());
+            }
+        }
+        publishStats();
+    }
+
+    /**
+     * @return The mode the running command or match phase needs on every camera, or null if it's up to each camera.
+     */
+    private VisionMode getRequiredMode() {
+        Command driveCommand = driveSubsystem.getCurrentCommand();
+        if (driveCommand instanceof ProfiledCommand) {
+            driveCommand = ((ProfiledCommand) driveCommand).getCommand();
+        }
+        if (driveCommand instanceof VisionConsumer) {
+            return ((VisionConsumer) driveCommand).getRequiredVisionMode();
+        }
+        if (DriverStation.isAutonomous() || DriverStation.isTest()) {
+            return VisionMode.APRILTAG;
+        }
+        return null;
+    }
+
+    private VisionMode getDefaultMode(PhotonCameraSystem cameraSystem) {
+        if (DriverStation.isDisabled()) {
+            // Keep the pose updated while we wait, it doesn't need to be precise.
+            return VisionMode.LOW_RES;
+        }
+        if (cameraSystem.cameraDetails.getCameraName().equals(VisionWorkloadConstants.kDriverCamera)) {
+            return VisionMode.DRIVER;
+        }
+        return VisionMode.LOW_RES;
+    }
+
+    private void setMode(PhotonCameraSystem cameraSystem, VisionMode mode) {
+        switch (mode) {
+            case APRILTAG:
+                cameraSystem.setDriverMode(false);
+                cameraSystem.setPipelineIndex(VisionWorkloadConstants.kAprilTagPipeline);
+                break;
+            case LOW_RES:
+                cameraSystem.setDriverMode(false);
+                cameraSystem.setPipelineIndex(VisionWorkloadConstants.kLowResPipeline);
+                break;
+            case DRIVER:
+                cameraSystem.setDriverMode(true);
+                break;
+        }
+    }
+
+    private void publishStats() {
+        double now = Timer.getFPGATimestamp();
+        double elapsed = now - lastStatsTime;
+        if (elapsed < VisionWorkloadConstants.kStatsPeriodSeconds) return;
+        lastStatsTime = now;
+        for (int i = 0; i < lastFrameCounts.length; i++) {
+            var cameraSystem = cameraSystems.get(i);
+            int frameCount = cameraSystem.getFrameCount();
+            SmartDashboard.putNumber(dashboardPrefixes[i] + "FPS", (frameCount - lastFrameCounts[i]) / elapsed);
+            SmartDashboard.putNumber(dashboardPrefixes[i] + "Latency ms", cameraSystem.getLatencyMillis());
+            lastFrameCounts[i] = frameCount;
+        }
+    }
+
+    /**
+     * @param cameraName The name of the camera.
+     * @return The mode the camera was last put in, or null if it hasn't been set yet or there is no such camera.
+     */
+    public VisionMode getMode(String cameraName) {
+        for (int i = 0; i < currentModes.length; i++) {
+            if (cameraSystems.get(i).cameraDetails.getCameraName().equals(cameraName)) {
+                return currentModes[i];
+            }
+        }
+        return null;
+    }
+}
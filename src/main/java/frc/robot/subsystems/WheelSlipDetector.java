@@ -0,0 +1,132 @@
+package frc.robot.subsystems;
+
+import frc.robot.Constants.DriveConstants.WheelSlipConstants;
+
+/**
+ * Decides if the wheel encoders can be trusted for odometry.
+ * <p>Spinning wheels make the encoders turn faster than the gyro, or speed up faster than the accelerometer.
+ * Getting hit or pushed shows up as a jerk in the accelerometer that the encoders don't have.
+ * Either one marks the wheels as untrusted for {@link WheelSlipConstants#kHoldSeconds}.<p>
+ * <p>The gyro rate is in degrees per second clockwise positive, like {@link DriveSubsystem#getRotationRate()}.<p>
+ */
+public class WheelSlipDetector {
+    public enum State {
+        /** The wheels are moving the robot. */
+        GRIP,
+        /** The wheels are spinning faster than the robot moves. */
+        SLIP,
+        /** Something hit or is pushing the robot. */
+        COLLISION
+    }
+
+    private final double trackwidthMeters;
+
+    private double lastTime = Double.NaN;
+    private double lastVelocity;
+    private double lastAccel;
+    private double encoderAccel;
+    private double smoothedAccel;
+    private double slipUntil = Double.NEGATIVE_INFINITY;
+    private double collisionUntil = Double.NEGATIVE_INFINITY;
+    private State state = State.GRIP;
+
+    /**
+     * @param trackwidthMeters The track width the encoder turn rate is worked out with.
+     */
+    public WheelSlipDetector(double trackwidthMeters) {
+        this.trackwidthMeters = trackwidthMeters;
+    }
+
+    /**
+     * Checks the latest sensor readings.
+     * @param timestampSeconds When the readings were taken.
+     * @param leftVelocity The left encoder rate in meters per second.
+     * @param rightVelocity The right encoder rate in meters per second.
+     * @param gyroRateDegrees The gyro rate, clockwise positive.
+     * @param forwardAccel The unfiltered forward acceleration from the accelerometer in meters per second squared.
+     * @return The new state.
+     */
+    public State update(double timestampSeconds, double leftVelocity, double rightVelocity, double gyroRateDegrees, double forwardAccel) {
+        double velocity = (leftVelocity + rightVelocity) / 2;
+        if (Double.isNaN(lastTime)) {
+            lastTime = timestampSeconds;
+            lastVelocity = velocity;
+            lastAccel = forwardAccel;
+            smoothedAccel = forwardAccel;
+            return state;
+        }
+        double dt = timestampSeconds - lastTime;
+        if (dt <= 0) return state;
+        lastTime = timestampSeconds;
+
+        // The gyro is clockwise positive, the wheels turn us counterclockwise when the right one is faster.
+        double encoderYawRate = Math.toDegrees((rightVelocity - leftVelocity) / trackwidthMeters);
+        if (Math.abs(encoderYawRate + gyroRateDegrees) > WheelSlipConstants.kMaxYawRateErrorDegrees) {
+            slipUntil = timestampSeconds + WheelSlipConstants.kHoldSeconds;
+        }
+
+        // Smooth both the same way, so a real change shows up in both at the same time.
+        double alpha = dt / (WheelSlipConstants.kAccelSmoothingSeconds + dt);
+        encoderAccel += alpha * ((velocity - lastVelocity) / dt - encoderAccel);
+        smoothedAccel += alpha * (forwardAccel - smoothedAccel);
+        double jerk = (forwardAccel - lastAccel) / dt;
+        lastVelocity = velocity;
+        lastAccel = forwardAccel;
+
+        boolean accelMismatch = Math.abs(encoderAccel - smoothedAccel) > WheelSlipConstants.kMaxAccelErrorMetersPerSecondSquared;
+        if (accelMismatch && Math.abs(jerk) > WheelSlipConstants.kCollisionJerkMetersPerSecondCubed) {
+            collisionUntil = timestampSeconds + WheelSlipConstants.kHoldSeconds;
+        } else if (accelMismatch && Math.abs(encoderAccel) > Math.abs(smoothedAccel)) {
+            // The wheels sped up (or slowed down) more than the robot did.
+            slipUntil = timestampSeconds + WheelSlipConstants.kHoldSeconds;
+        }
+
+        if (timestampSeconds < collisionUntil) {
+            state = State.COLLISION;
+        } else if (timestampSeconds < slipUntil) {
+            state = State.SLIP;
+        } else {
+            state = State.GRIP;
+        }
+        return state;
+    }
+
+    /**
+     * @return The state from the last update.
+     */
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * @return How much of the wheel movement should go into the odometry, between 0 and 1.
+     */
+    public double getOdometryWeight() {
+        switch (state) {
+            case SLIP:
+                return WheelSlipConstants.kSlipOdometryWeight;
+            case COLLISION:
+                return WheelSlipConstants.kCollisionOdometryWeight;
+            default:
+                return 1;
+        }
+    }
+
+    /**
+     * @return How much to multiply the vision standard deviations by, less than 1 while the wheels aren't trusted.
+     */
+    public double getVisionStdDevScale() {
+        return state == State.GRIP ? 1 : WheelSlipConstants.kSlipVisionStdDevScale;
+    }
+
+    /**
+     * Forgets everything, like after the robot was moved by hand.
+     */
+    public void reset() {
+        lastTime = Double.NaN;
+        encoderAccel = 0;
+        slipUntil = Double.NEGATIVE_INFINITY;
+        collisionUntil = Double.NEGATIVE_INFINITY;
+        state = State.GRIP;
+    }
+}
@@ -0,0 +1,149 @@
+package frc.robot.utils;
+
+import java.lang.management.ManagementFactory;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import frc.robot.Constants.LoopProfilerConstants;
+
+/**
+ * Counts how many bytes a loop allocates, and warns when it goes over its budget.
+ * <p>Everything a loop allocates is garbage the collector has to clean up later, usually in the middle of another loop.
+ * The count comes from {@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)} for the calling thread.
+ * Reading it can allocate a little by itself, that is measured once and taken out of every count.
+ * On a JVM that can't count allocations everything reads as 0.<p>
+ * <p>Like the {@link LoopProfiler}, only use it from the robot thread.<p>
+ */
+public class AllocationMonitor {
+    private static final com.sun.management.ThreadMXBean threadBean = getThreadBean();
+    private static final long overheadBytes = measureOverhead();
+
+    private final String name;
+    private final String dashboardKey;
+    private final long budgetBytes;
+    private long startBytes;
+    private long lastBytes;
+    private long maxBytes;
+    private long windowBytes;
+    private long windowLoops;
+    private long overBudgetLoops;
+    private double lastAlertTime = Double.NEGATIVE_INFINITY;
+
+    /**
+     * @param name The loop being counted, like {@code "Scheduler loop"}.
+     * @param budgetBytes How much one loop can allocate before it's reported.
+     */
+    public AllocationMonitor(String name, long budgetBytes) {
+        this.name = name;
+        this.dashboardKey = "Allocation/" + name + "/";
+        this.budgetBytes = budgetBytes;
+    }
+
+    /**
+     * @return true if the JVM can count allocations.
+     */
+    public static boolean isSupported() {
+        return threadBean != null;
+    }
+
+    /**
+     * @return How many bytes the calling thread allocated since it started, 0 if the JVM can't tell.
+     */
+    public static long getAllocatedBytes() {
+        return threadBean == null ? 0 : threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * @param startBytes What {@link #getAllocatedBytes()} returned at the start.
+     * @return How many bytes the calling thread allocated since then, without what reading the count allocates.
+     */
+    public static long getBytesSince(long startBytes) {
+        return Math.max(0, getAllocatedBytes() - startBytes - overheadBytes);
+    }
+
+    /**
+     * Call this at the start of the loop.
+     */
+    public void start() {
+        startBytes = getAllocatedBytes();
+    }
+
+    /**
+     * Call this at the end of the loop.
+     * @return true if the loop went over budget and it's time to {@link #alert(CharSequence)} about it,
+     * alerts are kept at least {@link LoopProfilerConstants#kMinDumpIntervalSeconds} apart.
+     */
+    public boolean stop() {
+        lastBytes = getBytesSince(startBytes);
+        maxBytes = Math.max(maxBytes, lastBytes);
+        windowBytes += lastBytes;
+        windowLoops++;
+        if (lastBytes <= budgetBytes) return false;
+        overBudgetLoops++;
+        double now = Timer.getFPGATimestamp();
+        if (now - lastAlertTime < LoopProfilerConstants.kMinDumpIntervalSeconds) return false;
+        lastAlertTime = now;
+        return true;
+    }
+
+    /**
+     * Prints how much the last loop allocated.
+     * @param details What allocated it, printed after the total.
+     */
+    public void alert(CharSequence details) {
+        DriverStation.reportWarning(name + " allocated " + lastBytes + " bytes, the budget is " + budgetBytes + details, false);
+    }
+
+    /**
+     * @return How many bytes the last loop allocated.
+     */
+    public long getLastBytes() {
+        return lastBytes;
+    }
+
+    /**
+     * @return The most bytes a single loop allocated.
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return How many loops went over budget.
+     */
+    public long getOverBudgetLoops() {
+        return overBudgetLoops;
+    }
+
+    /**
+     * Puts the average and max bytes per loop on the dashboard and starts a new window for the average.
+     */
+    public void publish() {
+        SmartDashboard.putNumber(dashboardKey + "Bytes per loop", windowLoops == 0 ? 0 : (double) windowBytes / windowLoops);
+        SmartDashboard.putNumber(dashboardKey + "Max bytes", maxBytes);
+        SmartDashboard.putNumber(dashboardKey + "Over budget", overBudgetLoops);
+        windowBytes = 0;
+        windowLoops = 0;
+    }
+
+    private static com.sun.management.ThreadMXBean getThreadBean() {
+        var bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) return null;
+        var sunBean = (com.sun.management.ThreadMXBean) bean;
+        if (!sunBean.isThreadAllocatedMemorySupported()) return null;
+        sunBean.setThreadAllocatedMemoryEnabled(true);
+        return sunBean;
+    }
+
+    private static long measureOverhead() {
+        if (threadBean == null) return 0;
+        long overhead = Long.MAX_VALUE;
+        // The smallest of a few, in case something else allocated in between.
+        for (int i = 0; i < 10; i++) {
+            long start = getAllocatedBytes();
+            overhead = Math.min(overhead, getAllocatedBytes() - start);
+        }
+        return overhead;
+    }
+}
@@ -0,0 +1,89 @@
+package frc.robot.utils;
+
+/**
+ * Counts durations in fixed buckets, so percentiles can be read without keeping every sample.
+ * <p>Below 8 µs every microsecond has its own bucket, above that every power of two is split in 8,
+ * so a percentile is never more than 12.5% over the real value. Anything over about a second goes in the last bucket.
+ * The buckets are made once, recording never allocates.<p>
+ */
+public class LatencyHistogram {
+    private static final int kSubBuckets = 8;
+    private static final int kSubBucketBits = 3;
+    /** 2^20 µs, about a second. */
+    private static final int kMaxExponent = 20;
+    private static final int kBucketCount = kSubBuckets + (kMaxExponent - kSubBucketBits) * kSubBuckets;
+
+    private final long[] counts = new long[kBucketCount];
+    private long count;
+    private long totalNanos;
+    private long maxNanos;
+
+    /**
+     * Adds a duration.
+     * @param nanos How long it took in nanoseconds.
+     */
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        counts[bucket(nanos / 1000)]++;
+        count++;
+        totalNanos += nanos;
+        maxNanos = Math.max(maxNanos, nanos);
+    }
+
+    /**
+     * Forgets every duration.
+     */
+    public void reset() {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = 0;
+        }
+        count = 0;
+        totalNanos = 0;
+        maxNanos = 0;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMeanSeconds() {
+        return count == 0 ? 0 : totalNanos / 1e9 / count;
+    }
+
+    public double getMaxSeconds() {
+        return maxNanos / 1e9;
+    }
+
+    /**
+     * @param percentile Between 0 and 1, 0.99 is the 99th percentile.
+     * @return The top of the bucket the percentile falls in (never more than the max), 0 if nothing was recorded.
+     */
+    public double getPercentileSeconds(double percentile) {
+        if (count == 0) return 0;
+        long target = Math.max(1, (long) Math.ceil(percentile * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                // The last bucket has no top, everything past it is in there.
+                if (i == counts.length - 1) return getMaxSeconds();
+                return Math.min(upperBoundMicros(i) / 1e6, getMaxSeconds());
+            }
+        }
+        return getMaxSeconds();
+    }
+
+    private static int bucket(long micros) {
+        if (micros < kSubBuckets) return (int) micros;
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int subBucket = (int) (micros >>> (exponent - kSubBucketBits)) & (kSubBuckets - 1);
+        return Math.min(kSubBuckets + (exponent - kSubBucketBits) * kSubBuckets + subBucket, kBucketCount - 1);
+    }
+
+    private static long upperBoundMicros(int bucket) {
+        if (bucket < kSubBuckets) return bucket + 1;
+        int exponent = (bucket - kSubBuckets) / kSubBuckets + kSubBucketBits;
+        int subBucket = (bucket - kSubBuckets) % kSubBuckets;
+        return (long) (kSubBuckets + subBucket + 1) << (exponent - kSubBucketBits);
+    }
+}
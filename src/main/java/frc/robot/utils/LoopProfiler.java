@@ -0,0 +1,256 @@
+package frc.robot.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import frc.robot.Constants.LoopProfilerConstants;
+
+/**
+ * Times the parts of the main loop, to find out which one made it overrun.
+ * <p>Every subsystem {@code periodic()} and every {@link ProfiledCommand} has a {@link Section} that goes
+ * into a {@link LatencyHistogram}. {@link #publish()} puts the p50, p99 and max of each one on the dashboard and starts
+ * a new window. {@link #startCycle()} and {@link #endCycle()} go around the scheduler, and if it took longer than
+ * {@link LoopProfilerConstants#kOverrunSeconds} the sections that took the longest in that cycle are printed.<p>
+ * <p>Every section also counts the bytes it allocates with the {@link AllocationMonitor}, and if a scheduler cycle
+ * allocates more than {@link LoopProfilerConstants#kCycleAllocationBudgetBytes} the sections that allocated the most
+ * are printed the same way.<p>
+ * <p>Sections are made once, starting and stopping one never allocates.
+ * Only use it from the robot thread, nothing here is synchronized.<p>
+ */
+public final class LoopProfiler {
+    /**
+     * One timed part of the loop.
+     */
+    public static final class Section {
+        private final String name;
+        private final String dashboardKey;
+        private final LatencyHistogram histogram = new LatencyHistogram();
+        private long startNanos;
+        private long cycleNanos;
+        private long lastNanos;
+        private long startBytes;
+        private long cycleBytes;
+        private long lastBytes;
+        private long windowBytes;
+
+        private Section(String name) {
+            this.name = name;
+            this.dashboardKey = "Profiler/" + name + "/";
+        }
+
+        public void start() {
+            if (trackAllocations) startBytes = AllocationMonitor.getAllocatedBytes();
+            startNanos = System.nanoTime();
+        }
+
+        public void stop() {
+            long took = System.nanoTime() - startNanos;
+            histogram.record(took);
+            cycleNanos += took;
+            lastNanos = took;
+            if (trackAllocations) {
+                lastBytes = AllocationMonitor.getBytesSince(startBytes);
+                cycleBytes += lastBytes;
+                windowBytes += lastBytes;
+            }
+        }
+
+        /**
+         * Runs something and times it, the section is stopped even if it throws.
+         * <p>Keep the runnable in a field, a method reference made every loop allocates.<p>
+         * @param runnable What to time, like a subsystem's periodic body.
+         */
+        public void time(Runnable runnable) {
+            start();
+            try {
+                runnable.run();
+            } finally {
+                stop();
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return The durations since the last {@link LoopProfiler#publish()}.
+         */
+        public LatencyHistogram getHistogram() {
+            return histogram;
+        }
+
+        /**
+         * @return How long it took in total in the current (or last) scheduler cycle.
+         */
+        public double getCycleSeconds() {
+            return cycleNanos / 1e9;
+        }
+
+        public double getLastSeconds() {
+            return lastNanos / 1e9;
+        }
+
+        /**
+         * @return How many bytes it allocated in total in the current (or last) scheduler cycle.
+         */
+        public long getCycleBytes() {
+            return cycleBytes;
+        }
+
+        public long getLastBytes() {
+            return lastBytes;
+        }
+    }
+
+    private static final boolean trackAllocations = LoopProfilerConstants.kTrackAllocations && AllocationMonitor.isSupported();
+    private static final List<Section> sections = new ArrayList<>();
+    private static final List<Section> sectionsView = Collections.unmodifiableList(sections);
+    private static final Map<String, Section> sectionsByName = new HashMap<>();
+    private static final Section cycle = section("Scheduler");
+    private static final AllocationMonitor cycleAllocation =
+        new AllocationMonitor("Scheduler loop", LoopProfilerConstants.kCycleAllocationBudgetBytes);
+    private static final Section[] worstSections = new Section[LoopProfilerConstants.kDumpedSections];
+    private static final StringBuilder dump = new StringBuilder();
+    private static double lastDumpTime = Double.NEGATIVE_INFINITY;
+    private static long overruns;
+
+    private LoopProfiler() {
+    }
+
+    /**
+     * Gets the section with a name, making it the first time.
+     * <p>Call this once and keep the section, not every loop.<p>
+     * @param name Like {@code "DriveSubsystem.periodic"}.
+     * @return The section.
+     */
+    public static Section section(String name) {
+        var section = sectionsByName.get(name);
+        if (section == null) {
+            section = new Section(name);
+            sections.add(section);
+            sectionsByName.put(name, section);
+        }
+        return section;
+    }
+
+    /**
+     * Call this right before the scheduler runs.
+     */
+    public static void startCycle() {
+        for (int i = 0; i < sections.size(); i++) {
+            var section = sections.get(i);
+            section.cycleNanos = 0;
+            section.cycleBytes = 0;
+        }
+        if (trackAllocations) cycleAllocation.start();
+        cycle.start();
+    }
+
+    /**
+     * Call this right after the scheduler runs, prints the slowest sections if it overran
+     * and the ones that allocated the most if it went over the allocation budget.
+     */
+    public static void endCycle() {
+        cycle.stop();
+        if (trackAllocations && cycleAllocation.stop()) {
+            cycleAllocation.alert(dumpCycle(true));
+        }
+        if (cycle.getLastSeconds() <= LoopProfilerConstants.kOverrunSeconds) return;
+        overruns++;
+        double now = Timer.getFPGATimestamp();
+        PauseMonitor.recordOverrun(now - cycle.getLastSeconds(), now);
+        if (now - lastDumpTime < LoopProfilerConstants.kMinDumpIntervalSeconds) return;
+        lastDumpTime = now;
+        DriverStation.reportWarning("Scheduler loop took " + formatMillis(cycle.lastNanos) + " ms" + dumpCycle(false), false);
+    }
+
+    /**
+     * @return How many scheduler cycles took longer than {@link LoopProfilerConstants#kOverrunSeconds}.
+     */
+    public static long getOverruns() {
+        return overruns;
+    }
+
+    /**
+     * @return What the scheduler cycles allocate.
+     */
+    public static AllocationMonitor getCycleAllocation() {
+        return cycleAllocation;
+    }
+
+    /**
+     * @return Every section, in the order they were made.
+     */
+    public static List<Section> getSections() {
+        return sectionsView;
+    }
+
+    /**
+     * Puts the p50, p99 and max of every section on the dashboard and starts a new window.
+     */
+    public static void publish() {
+        for (int i = 0; i < sections.size(); i++) {
+            var section = sections.get(i);
+            var histogram = section.histogram;
+            if (histogram.getCount() == 0) continue;
+            SmartDashboard.putNumber(section.dashboardKey + "p50 ms", histogram.getPercentileSeconds(0.5) * 1000);
+            SmartDashboard.putNumber(section.dashboardKey + "p99 ms", histogram.getPercentileSeconds(0.99) * 1000);
+            SmartDashboard.putNumber(section.dashboardKey + "Max ms", histogram.getMaxSeconds() * 1000);
+            if (trackAllocations) {
+                SmartDashboard.putNumber(section.dashboardKey + "Bytes per call", (double) section.windowBytes / histogram.getCount());
+                section.windowBytes = 0;
+            }
+            histogram.reset();
+        }
+        SmartDashboard.putNumber("Profiler/Overruns", overruns);
+        if (trackAllocations) cycleAllocation.publish();
+    }
+
+    /**
+     * @param byBytes true to list the sections that allocated the most, false for the ones that took the longest.
+     * @return The worst sections of the last scheduler cycle, one per line.
+     */
+    private static String dumpCycle(boolean byBytes) {
+        for (int i = 0; i < worstSections.length; i++) {
+            worstSections[i] = null;
+        }
+        for (int i = 0; i < sections.size(); i++) {
+            var section = sections.get(i);
+            long value = byBytes ? section.cycleBytes : section.cycleNanos;
+            if (section == cycle || value == 0) continue;
+            // Keep the worst few in order, there are too few to bother sorting all of them.
+            for (int j = 0; j < worstSections.length; j++) {
+                if (worstSections[j] == null || value > (byBytes ? worstSections[j].cycleBytes : worstSections[j].cycleNanos)) {
+                    System.arraycopy(worstSections, j, worstSections, j + 1, worstSections.length - j - 1);
+                    worstSections[j] = section;
+                    break;
+                }
+            }
+        }
+        dump.setLength(0);
+        dump.append(':');
+        for (var section : worstSections) {
+            if (section == null) break;
+            dump.append("\n  ").append(section.name).append(": ");
+            if (byBytes) {
+                dump.append(section.cycleBytes).append(" bytes");
+            } else {
+                dump.append(formatMillis(section.cycleNanos))
+                    .append(" ms (p99 ").append(formatMillis((long) (section.histogram.getPercentileSeconds(0.99) * 1e9)))
+                    .append(" ms)");
+            }
+        }
+        return dump.toString();
+    }
+
+    private static double formatMillis(long nanos) {
+        return Math.round(nanos / 1e4) / 100.0;
+    }
+}
@@ -0,0 +1,280 @@
+package frc.robot.utils;
+
+import java.lang.management.CompilationMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.RuntimeMXBean;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import frc.robot.Constants.PauseMonitorConstants;
+
+/**
+ * Finds out how many of our overruns and missed deadlines happened while the JVM was busy with itself.
+ * <p>Every garbage collection pause is reported by the collectors, and {@link #poll()} watches the total compilation
+ * time for bursts of JIT compiling. Both are put on the FPGA clock, next to the scheduler overruns from the
+ * {@link LoopProfiler} and the missed deadlines from the {@link PeriodicTaskScheduler}.
+ * {@link #reportMatch()} then prints how much time went to pauses and how many overruns and missed deadlines
+ * overlapped one, so we know if a slow loop was our code or the JVM.<p>
+ * <p>The collectors report from their own thread, the rest is only used from the robot thread.<p>
+ */
+public final class PauseMonitor {
+    private static final int kCapacity = PauseMonitorConstants.kEventCapacity;
+
+    /**
+     * What happened since the match started.
+     */
+    public static final class Report {
+        public final double matchSeconds;
+        public final long gcPauses;
+        public final double gcPauseSeconds;
+        public final double maxGcPauseSeconds;
+        public final long compileBursts;
+        public final double compileSeconds;
+        public final long overruns;
+        public final long overrunsDuringGc;
+        public final long overrunsDuringCompile;
+        public final long missedDeadlines;
+        public final long missedDeadlinesDuringGc;
+        public final long missedDeadlinesDuringCompile;
+
+        private Report(double matchSeconds, long gcPauses, double gcPauseSeconds, double maxGcPauseSeconds,
+                long compileBursts, double compileSeconds, long overruns, long overrunsDuringGc, long overrunsDuringCompile,
+                long missedDeadlines, long missedDeadlinesDuringGc, long missedDeadlinesDuringCompile) {
+            this.matchSeconds = matchSeconds;
+            this.gcPauses = gcPauses;
+            this.gcPauseSeconds = gcPauseSeconds;
+            this.maxGcPauseSeconds = maxGcPauseSeconds;
+            this.compileBursts = compileBursts;
+            this.compileSeconds = compileSeconds;
+            this.overruns = overruns;
+            this.overrunsDuringGc = overrunsDuringGc;
+            this.overrunsDuringCompile = overrunsDuringCompile;
+            this.missedDeadlines = missedDeadlines;
+            this.missedDeadlinesDuringGc = missedDeadlinesDuringGc;
+            this.missedDeadlinesDuringCompile = missedDeadlinesDuringCompile;
+        }
+
+        /**
+         * @return How many of the missed deadlines happened during a GC pause, between 0 and 1.
+         */
+        public double getMissedDeadlineGcShare() {
+            return missedDeadlines == 0 ? 0 : (double) missedDeadlinesDuringGc / missedDeadlines;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Match report over %.1f s: GC paused %d times for %.0f ms (max %.0f ms), JIT compiled for %.0f ms in %d bursts. "
+                + "Scheduler overruns: %d, %d during GC, %d during JIT. "
+                + "Missed deadlines: %d, %d during GC (%.0f%%), %d during JIT.",
+                matchSeconds, gcPauses, gcPauseSeconds * 1000, maxGcPauseSeconds * 1000, compileSeconds * 1000, compileBursts,
+                overruns, overrunsDuringGc, overrunsDuringCompile,
+                missedDeadlines, missedDeadlinesDuringGc, getMissedDeadlineGcShare() * 100, missedDeadlinesDuringCompile);
+        }
+    }
+
+    // Written by the collectors' thread, everything touching these is synchronized.
+    private static final double[] pauseStarts = new double[kCapacity];
+    private static final double[] pauseEnds = new double[kCapacity];
+    private static int storedPauses;
+    private static long gcPauses;
+    private static double gcPauseSeconds;
+    private static double maxGcPauseSeconds;
+
+    private static final double[] burstStarts = new double[kCapacity];
+    private static final double[] burstEnds = new double[kCapacity];
+    private static int storedBursts;
+    private static long compileBursts;
+    private static double compileSeconds;
+
+    private static final double[] overrunStarts = new double[kCapacity];
+    private static final double[] overrunEnds = new double[kCapacity];
+    private static int storedOverruns;
+    private static long overruns;
+
+    private static final double[] missedStarts = new double[kCapacity];
+    private static final double[] missedEnds = new double[kCapacity];
+    private static final long[] missedCounts = new long[kCapacity];
+    private static int storedMissed;
+    private static long missedDeadlines;
+
+    private static boolean installed;
+    private static RuntimeMXBean runtimeBean;
+    private static CompilationMXBean compilationBean;
+    private static long lastCompileMillis;
+    private static double lastPollTime = Double.NaN;
+    private static double matchStartTime;
+
+    private PauseMonitor() {
+    }
+
+    /**
+     * Starts listening to the garbage collectors, only the first call does anything.
+     */
+    public static synchronized void install() {
+        if (installed) return;
+        installed = true;
+        runtimeBean = ManagementFactory.getRuntimeMXBean();
+        compilationBean = ManagementFactory.getCompilationMXBean();
+        if (compilationBean != null && !compilationBean.isCompilationTimeMonitoringSupported()) {
+            compilationBean = null;
+        }
+        if (compilationBean != null) lastCompileMillis = compilationBean.getTotalCompilationTime();
+        for (GarbageCollectorMXBean gcBean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (gcBean instanceof NotificationEmitter) {
+                ((NotificationEmitter) gcBean).addNotificationListener(PauseMonitor::handleGcNotification, null, null);
+            }
+        }
+        matchStartTime = Timer.getFPGATimestamp();
+    }
+
+    /**
+     * Forgets everything so far, call this when a match starts.
+     */
+    public static synchronized void startMatch() {
+        storedPauses = 0;
+        gcPauses = 0;
+        gcPauseSeconds = 0;
+        maxGcPauseSeconds = 0;
+        storedBursts = 0;
+        compileBursts = 0;
+        compileSeconds = 0;
+        storedOverruns = 0;
+        overruns = 0;
+        storedMissed = 0;
+        missedDeadlines = 0;
+        matchStartTime = Timer.getFPGATimestamp();
+    }
+
+    /**
+     * Adds a garbage collection pause, called by the collectors' listener.
+     * @param startSeconds When it started, on the FPGA clock.
+     * @param durationSeconds How long the robot was stopped.
+     */
+    public static synchronized void recordPause(double startSeconds, double durationSeconds) {
+        gcPauses++;
+        gcPauseSeconds += durationSeconds;
+        maxGcPauseSeconds = Math.max(maxGcPauseSeconds, durationSeconds);
+        if (storedPauses < kCapacity) {
+            pauseStarts[storedPauses] = startSeconds;
+            pauseEnds[storedPauses] = startSeconds + durationSeconds;
+            storedPauses++;
+        }
+    }
+
+    /**
+     * Adds a scheduler loop that took too long.
+     * @param startSeconds When the loop started, on the FPGA clock.
+     * @param endSeconds When it ended.
+     */
+    public static synchronized void recordOverrun(double startSeconds, double endSeconds) {
+        overruns++;
+        if (storedOverruns < kCapacity) {
+            overrunStarts[storedOverruns] = startSeconds;
+            overrunEnds[storedOverruns] = endSeconds;
+            storedOverruns++;
+        }
+    }
+
+    /**
+     * Adds deadlines a periodic task missed.
+     * @param dueSeconds When it should have run, on the FPGA clock.
+     * @param ranSeconds When it really ran.
+     * @param count How many of its periods went by.
+     */
+    public static synchronized void recordMissedDeadlines(double dueSeconds, double ranSeconds, long count) {
+        missedDeadlines += count;
+        if (storedMissed < kCapacity) {
+            missedStarts[storedMissed] = dueSeconds;
+            missedEnds[storedMissed] = ranSeconds;
+            missedCounts[storedMissed] = count;
+            storedMissed++;
+        }
+    }
+
+    /**
+     * Looks for a burst of JIT compiling since the last poll, run this as a slow periodic task.
+     */
+    public static synchronized void poll() {
+        if (compilationBean == null) return;
+        double now = Timer.getFPGATimestamp();
+        long compileMillis = compilationBean.getTotalCompilationTime();
+        double compiled = (compileMillis - lastCompileMillis) / 1000.0;
+        lastCompileMillis = compileMillis;
+        double since = lastPollTime;
+        lastPollTime = now;
+        if (Double.isNaN(since)) return;
+        compileSeconds += compiled;
+        if (compiled < PauseMonitorConstants.kCompileBurstSeconds) return;
+        compileBursts++;
+        if (storedBursts < kCapacity) {
+            burstStarts[storedBursts] = since;
+            burstEnds[storedBursts] = now;
+            storedBursts++;
+        }
+    }
+
+    /**
+     * @return What happened since the match started.
+     */
+    public static synchronized Report getReport() {
+        long overrunsDuringGc = 0;
+        long overrunsDuringCompile = 0;
+        for (int i = 0; i < storedOverruns; i++) {
+            if (overlapsAny(overrunStarts[i], overrunEnds[i], pauseStarts, pauseEnds, storedPauses)) overrunsDuringGc++;
+            if (overlapsAny(overrunStarts[i], overrunEnds[i], burstStarts, burstEnds, storedBursts)) overrunsDuringCompile++;
+        }
+        long missedDuringGc = 0;
+        long missedDuringCompile = 0;
+        for (int i = 0; i < storedMissed; i++) {
+            if (overlapsAny(missedStarts[i], missedEnds[i], pauseStarts, pauseEnds, storedPauses)) missedDuringGc += missedCounts[i];
+            if (overlapsAny(missedStarts[i], missedEnds[i], burstStarts, burstEnds, storedBursts)) missedDuringCompile += missedCounts[i];
+        }
+        return new Report(Timer.getFPGATimestamp() - matchStartTime, gcPauses, gcPauseSeconds, maxGcPauseSeconds,
+            compileBursts, compileSeconds, overruns, overrunsDuringGc, overrunsDuringCompile,
+            missedDeadlines, missedDuringGc, missedDuringCompile);
+    }
+
+    /**
+     * Prints the report and puts it on the dashboard, call this when the robot is disabled after a match.
+     * @return The report.
+     */
+    public static Report reportMatch() {
+        var report = getReport();
+        System.out.println(report);
+        SmartDashboard.putNumber("Pauses/GC ms", report.gcPauseSeconds * 1000);
+        SmartDashboard.putNumber("Pauses/Max GC ms", report.maxGcPauseSeconds * 1000);
+        SmartDashboard.putNumber("Pauses/JIT ms", report.compileSeconds * 1000);
+        SmartDashboard.putNumber("Pauses/Overruns", report.overruns);
+        SmartDashboard.putNumber("Pauses/Overruns During GC", report.overrunsDuringGc);
+        SmartDashboard.putNumber("Pauses/Missed Deadlines", report.missedDeadlines);
+        SmartDashboard.putNumber("Pauses/Missed Deadlines GC %", report.getMissedDeadlineGcShare() * 100);
+        return report;
+    }
+
+    private static boolean overlapsAny(double start, double end, double[] starts, double[] ends, int count) {
+        // The collectors report in whole milliseconds, so give it a little room.
+        double slack = PauseMonitorConstants.kCorrelationSlackSeconds;
+        for (int i = 0; i < count; i++) {
+            if (starts[i] <= end + slack && ends[i] >= start - slack) return true;
+        }
+        return false;
+    }
+
+    private static void handleGcNotification(Notification notification, Object handback) {
+        if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) return;
+        var info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+        // Concurrent cycles run next to the robot code, only the pauses stop it.
+        if (info.getGcName().contains("Concurrent")) return;
+        var gcInfo = info.getGcInfo();
+        // The collectors count from when the JVM started, move that onto the FPGA clock.
+        double offset = Timer.getFPGATimestamp() - runtimeBean.getUptime() / 1000.0;
+        recordPause(gcInfo.getStartTime() / 1000.0 + offset, gcInfo.getDuration() / 1000.0);
+    }
+}
@@ -0,0 +1,282 @@
+package frc.robot.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.DoubleSupplier;
+
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import frc.robot.Constants.TaskSchedulerConstants;
+
+/**
+ * Runs tasks at a few fixed rates, faster than the 20 ms scheduler loop.
+ * <p>{@link #run()} is called every {@link #getPeriodSeconds()} (the fastest rate registered), and runs every task
+ * that is due, most important first. If a run goes over {@link TaskSchedulerConstants#kFrameBudgetFraction} of
+ * the period, the rest of the due tasks that aren't {@link Priority#CRITICAL} are skipped until their next turn.<p>
+ * <p>Every task keeps how long it takes, how often it was skipped and how often it missed its deadline
+ * (ran a whole period or more late, usually because the main loop was busy).<p>
+ * <p>The bytes every task allocates are counted with the {@link AllocationMonitor}, and the tasks of a run that
+ * allocates more than {@link TaskSchedulerConstants#kFrameAllocationBudgetBytes} are printed.<p>
+ * <p>Register every task before the first {@link #run()}, the rate it's called at is fixed by then.<p>
+ */
+public class PeriodicTaskScheduler {
+    public enum Rate {
+        k1kHz(0.001),
+        k200Hz(0.005),
+        k100Hz(0.01),
+        k50Hz(0.02),
+        k10Hz(0.1),
+        k1Hz(1);
+
+        public final double periodSeconds;
+
+        Rate(double periodSeconds) {
+            this.periodSeconds = periodSeconds;
+        }
+    }
+
+    public enum Priority {
+        /** Control loops, always run even if the frame is over budget. */
+        CRITICAL,
+        /** Runs unless the frame is over budget. */
+        NORMAL,
+        /** Telemetry and housekeeping, the first to go. */
+        LOW
+    }
+
+    /**
+     * A registered task and how it has been doing.
+     */
+    public static final class Task {
+        private final String name;
+        private final Rate rate;
+        private final Priority priority;
+        private final Runnable runnable;
+        private final String statsKey;
+        private double nextRunTime = Double.NaN;
+        private long runs;
+        private long skips;
+        private long missedDeadlines;
+        private long totalNanos;
+        private long maxNanos;
+        private long lastNanos;
+        private long lastBytes;
+        private long totalBytes;
+        private long lastFrame = -1;
+
+        private Task(String name, Rate rate, Priority priority, Runnable runnable) {
+            this.name = name;
+            this.rate = rate;
+            this.priority = priority;
+            this.runnable = runnable;
+            this.statsKey = "Tasks/" + name + "/";
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Rate getRate() {
+            return rate;
+        }
+
+        public Priority getPriority() {
+            return priority;
+        }
+
+        public long getRuns() {
+            return runs;
+        }
+
+        /** @return How many times it was due but skipped because the frame was over budget. */
+        public long getSkips() {
+            return skips;
+        }
+
+        /** @return How many of its periods went by without it running on time. */
+        public long getMissedDeadlines() {
+            return missedDeadlines;
+        }
+
+        public double getAverageSeconds() {
+            return runs == 0 ? 0 : totalNanos / 1e9 / runs;
+        }
+
+        public double getMaxSeconds() {
+            return maxNanos / 1e9;
+        }
+
+        public double getLastSeconds() {
+            return lastNanos / 1e9;
+        }
+
+        public double getAverageBytes() {
+            return runs == 0 ? 0 : (double) totalBytes / runs;
+        }
+
+        public long getLastBytes() {
+            return lastBytes;
+        }
+    }
+
+    private final DoubleSupplier clock;
+    private final List<Task> tasks = new ArrayList<>();
+    private final List<Task> tasksView = Collections.unmodifiableList(tasks);
+    private double periodSeconds = Double.NaN;
+    private final AllocationMonitor frameAllocation =
+        new AllocationMonitor("Fast loop", TaskSchedulerConstants.kFrameAllocationBudgetBytes);
+    private final StringBuilder allocationDetails = new StringBuilder();
+    private long frames;
+    private long overBudgetFrames;
+
+    /**
+     * Makes a scheduler running on the FPGA clock.
+     */
+    public PeriodicTaskScheduler() {
+        this(Timer::getFPGATimestamp);
+    }
+
+    /**
+     * Makes a scheduler running on a given clock, for tests.
+     * @param clock The time in seconds.
+     */
+    public PeriodicTaskScheduler(DoubleSupplier clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Adds a task. Tasks with the same priority run in the order they were added.
+     * @param name The name the stats are published under.
+     * @param rate How often to run it.
+     * @param priority How important it is when the frame is over budget.
+     * @param runnable What to run.
+     * @return The task, to read its stats.
+     */
+    public Task register(String name, Rate rate, Priority priority, Runnable runnable) {
+        var task = new Task(name, rate, priority, runnable);
+        tasks.add(task);
+        // A stable sort, so the registration order is kept inside each priority.
+        tasks.sort(Comparator.comparing(Task::getPriority));
+        if (Double.isNaN(periodSeconds) || rate.periodSeconds < periodSeconds) {
+            periodSeconds = rate.periodSeconds;
+        }
+        return task;
+    }
+
+    /**
+     * @return How often {@link #run()} should be called, the period of the fastest task.
+     */
+    public double getPeriodSeconds() {
+        return Double.isNaN(periodSeconds) ? Rate.k50Hz.periodSeconds : periodSeconds;
+    }
+
+    /**
+     * Runs every task that is due, call this every {@link #getPeriodSeconds()}.
+     */
+    public void run() {
+        double now = clock.getAsDouble();
+        long frameStart = System.nanoTime();
+        long budgetNanos = (long) (getPeriodSeconds() * TaskSchedulerConstants.kFrameBudgetFraction * 1e9);
+        frames++;
+        frameAllocation.start();
+        boolean overBudget = false;
+        for (int i = 0; i < tasks.size(); i++) {
+            var task = tasks.get(i);
+            double period = task.rate.periodSeconds;
+            if (Double.isNaN(task.nextRunTime)) task.nextRunTime = now;
+            // The clock counts whole microseconds, so don't let rounding push a task to the next frame.
+            if (now < task.nextRunTime - 1e-6) continue;
+
+            double lateness = now - task.nextRunTime;
+            if (lateness >= period - 1e-6) {
+                // Don't try to catch up, just count what was missed and start again from now.
+                long missed = (long) ((lateness + 1e-6) / period);
+                task.missedDeadlines += missed;
+                PauseMonitor.recordMissedDeadlines(task.nextRunTime, now, missed);
+                task.nextRunTime = now + period;
+            } else {
+                task.nextRunTime += period;
+            }
+
+            if (!overBudget && System.nanoTime() - frameStart > budgetNanos) {
+                overBudget = true;
+                overBudgetFrames++;
+            }
+            if (overBudget && task.priority != Priority.CRITICAL) {
+                task.skips++;
+                continue;
+            }
+            long startBytes = AllocationMonitor.getAllocatedBytes();
+            long start = System.nanoTime();
+            task.runnable.run();
+            long took = System.nanoTime() - start;
+            task.lastBytes = AllocationMonitor.getBytesSince(startBytes);
+            task.totalBytes += task.lastBytes;
+            task.lastFrame = frames;
+            task.runs++;
+            task.lastNanos = took;
+            task.totalNanos += took;
+            task.maxNanos = Math.max(task.maxNanos, took);
+        }
+        if (frameAllocation.stop()) {
+            frameAllocation.alert(describeFrameAllocations());
+        }
+    }
+
+    /**
+     * @return What allocated how much in this run.
+     */
+    public AllocationMonitor getFrameAllocation() {
+        return frameAllocation;
+    }
+
+    /**
+     * @return Every task, most important first.
+     */
+    public List<Task> getTasks() {
+        return tasksView;
+    }
+
+    /**
+     * @return How many times {@link #run()} was called.
+     */
+    public long getFrames() {
+        return frames;
+    }
+
+    /**
+     * @return How many runs went over budget and skipped tasks.
+     */
+    public long getOverBudgetFrames() {
+        return overBudgetFrames;
+    }
+
+    /**
+     * Puts the stats of every task on the dashboard, register this as a {@link Priority#LOW} task.
+     */
+    public void publishStats() {
+        for (int i = 0; i < tasks.size(); i++) {
+            var task = tasks.get(i);
+            SmartDashboard.putNumber(task.statsKey + "Average ms", task.getAverageSeconds() * 1000);
+            SmartDashboard.putNumber(task.statsKey + "Max ms", task.getMaxSeconds() * 1000);
+            SmartDashboard.putNumber(task.statsKey + "Missed", task.missedDeadlines);
+            SmartDashboard.putNumber(task.statsKey + "Skipped", task.skips);
+            SmartDashboard.putNumber(task.statsKey + "Bytes per run", task.getAverageBytes());
+        }
+        SmartDashboard.putNumber("Tasks/Over Budget Frames", overBudgetFrames);
+        frameAllocation.publish();
+    }
+
+    private String describeFrameAllocations() {
+        allocationDetails.setLength(0);
+        allocationDetails.append(':');
+        for (int i = 0; i < tasks.size(); i++) {
+            var task = tasks.get(i);
+            if (task.lastFrame != frames || task.lastBytes == 0) continue;
+            allocationDetails.append("\n  ").append(task.name).append(": ").append(task.lastBytes).append(" bytes");
+        }
+        return allocationDetails.toString();
+    }
+}
@@ -0,0 +1,71 @@
+package frc.robot.utils;
+
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.WrapperCommand;
+
+/**
+ * Runs a command and times its {@code initialize()}, {@code execute()} and {@code end()} with the {@link LoopProfiler}.
+ * <p>Like any other composition, the wrapped command can't be scheduled on its own anymore.<p>
+ */
+public class ProfiledCommand extends WrapperCommand {
+    private final LoopProfiler.Section initializeSection;
+    private final LoopProfiler.Section executeSection;
+    private final LoopProfiler.Section endSection;
+
+    /**
+     * Profiles a command under its own name.
+     * @param command The command to run.
+     */
+    public ProfiledCommand(Command command) {
+        this(command, command.getName());
+    }
+
+    /**
+     * @param command The command to run.
+     * @param name The name the sections are made with, for commands like groups whose own name says little.
+     */
+    public ProfiledCommand(Command command, String name) {
+        super(command);
+        setName(name);
+        initializeSection = LoopProfiler.section(name + ".initialize");
+        executeSection = LoopProfiler.section(name + ".execute");
+        endSection = LoopProfiler.section(name + ".end");
+    }
+
+    /**
+     * @return The command being profiled.
+     */
+    public Command getCommand() {
+        return m_command;
+    }
+
+    @Override
+    public void initialize() {
+        initializeSection.start();
+        try {
+            m_command.initialize();
+        } finally {
+            initializeSection.stop();
+        }
+    }
+
+    @Override
+    public void execute() {
+        executeSection.start();
+        try {
+            m_command.execute();
+        } finally {
+            executeSection.stop();
+        }
+    }
+
+    @Override
+    public void end(boolean interrupted) {
+        endSection.start();
+        try {
+            m_command.end(interrupted);
+        } finally {
+            endSection.stop();
+        }
+    }
+}
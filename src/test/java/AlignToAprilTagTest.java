@@ -0,0 +1,33 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import frc.robot.commands.AlignToAprilTagCmd;
+import frc.robot.subsystems.AprilTagFieldCache;
+
+public class AlignToAprilTagTest {
+    static final double DELTA = 1e-6;
+
+    @Test
+    void scoringPoseInFrontOfTagTest() {
+        // Tag 1 is on the red grid, facing the blue side of the field.
+        var scoringPose = AlignToAprilTagCmd.getScoringPose(1, 0.8).orElseThrow();
+        assertEquals(AprilTagFieldCache.getTagX(1) - 0.8, scoringPose.getX(), DELTA);
+        assertEquals(AprilTagFieldCache.getTagY(1), scoringPose.getY(), DELTA);
+        assertEquals(0, scoringPose.getRotation().getDegrees(), DELTA);
+    }
+
+    @Test
+    void scoringPoseFacesTagTest() {
+        // Tag 7 is on the blue grid, facing the red side of the field.
+        var scoringPose = AlignToAprilTagCmd.getScoringPose(7, 0.8).orElseThrow();
+        assertEquals(AprilTagFieldCache.getTagX(7) + 0.8, scoringPose.getX(), DELTA);
+        assertEquals(180, Math.abs(scoringPose.getRotation().getDegrees()), DELTA);
+    }
+
+    @Test
+    void unknownTagTest() {
+        assertTrue(AlignToAprilTagCmd.getScoringPose(42, 0.8).isEmpty());
+    }
+}
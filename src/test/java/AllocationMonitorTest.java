@@ -0,0 +1,59 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import edu.wpi.first.hal.HAL;
+import frc.robot.utils.AllocationMonitor;
+import frc.robot.utils.LoopProfiler;
+
+public class AllocationMonitorTest {
+    static final int kAllocationSize = 64 * 1024;
+    // Kept in a field, so the JIT can't drop the allocation.
+    byte[] sink;
+
+    @BeforeEach
+    void setup() {
+        HAL.initialize(500, 0);
+        assumeTrue(AllocationMonitor.isSupported(), "This JVM can't count allocations");
+    }
+
+    @Test
+    void overBudgetTest() {
+        var monitor = new AllocationMonitor("Test loop", 1024);
+        monitor.start();
+        sink = new byte[kAllocationSize];
+        assertTrue(monitor.stop());
+        assertTrue(monitor.getLastBytes() >= kAllocationSize);
+        assertEquals(1, monitor.getOverBudgetLoops());
+
+        // Still over budget, but it was just reported.
+        monitor.start();
+        sink = new byte[kAllocationSize];
+        assertFalse(monitor.stop());
+        assertEquals(2, monitor.getOverBudgetLoops());
+    }
+
+    @Test
+    void emptyLoopTest() {
+        var monitor = new AllocationMonitor("Test empty loop", 1024);
+        for (int i = 0; i < 10; i++) {
+            monitor.start();
+            assertFalse(monitor.stop());
+        }
+        // Reading the count itself isn't counted.
+        assertTrue(monitor.getMaxBytes() < 256, "Counted " + monitor.getMaxBytes() + " bytes");
+    }
+
+    @Test
+    void sectionCountsBytesTest() {
+        var section = LoopProfiler.section("Test.allocate");
+        section.start();
+        sink = new byte[kAllocationSize];
+        section.stop();
+        assertTrue(section.getLastBytes() >= kAllocationSize);
+    }
+}
@@ -0,0 +1,50 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import frc.robot.subsystems.AprilTagFieldCache;
+
+public class AprilTagFieldCacheTest {
+    double delta = 0.0001;
+
+    @Test
+    void layoutIsSharedTest() {
+        var first = AprilTagFieldCache.getLayout();
+        var second = AprilTagFieldCache.getLayout();
+        assertTrue(first.isPresent());
+        assertSame(first.get(), second.get());
+        assertTrue(AprilTagFieldCache.isLoaded());
+    }
+
+    @Test
+    void loadedLayoutDoesNotWaitTest() {
+        var layout = AprilTagFieldCache.getLayout();
+        var withoutWaiting = AprilTagFieldCache.getLayoutIfLoaded();
+        assertTrue(withoutWaiting.isPresent());
+        assertSame(layout.get(), withoutWaiting.get());
+    }
+
+    @Test
+    void tagArraysMatchLayoutTest() {
+        var layout = AprilTagFieldCache.getLayout().get();
+        for (var tag : layout.getTags()) {
+            assertTrue(AprilTagFieldCache.hasTag(tag.ID));
+            assertEquals(tag.pose.getX(), AprilTagFieldCache.getTagX(tag.ID), delta);
+            assertEquals(tag.pose.getY(), AprilTagFieldCache.getTagY(tag.ID), delta);
+            assertEquals(tag.pose.getZ(), AprilTagFieldCache.getTagZ(tag.ID), delta);
+            assertEquals(tag.pose.getRotation().getZ(), AprilTagFieldCache.getTagYaw(tag.ID), delta);
+        }
+    }
+
+    @Test
+    void missingTagTest() {
+        AprilTagFieldCache.getLayout();
+        assertFalse(AprilTagFieldCache.hasTag(-1));
+        assertFalse(AprilTagFieldCache.hasTag(0));
+        assertFalse(AprilTagFieldCache.hasTag(100));
+        assertTrue(Double.isNaN(AprilTagFieldCache.getTagX(100)));
+    }
+}
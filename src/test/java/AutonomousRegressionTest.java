@@ -0,0 +1,167 @@
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import edu.wpi.first.math.trajectory.Trajectory;
+import frc.robot.Constants.AutonomousConstants;
+import frc.robot.simulation.RobotSimulationHarness;
+
+/**
+ * Runs every autonomous routine in the simulator and compares how it did against a stored baseline.
+ * <p>The baseline is committed. A routine or metric missing from it is skipped, not failed, run the build with
+ * {@code -PrecordBaseline} to save the results as the new baseline and commit the file.<p>
+ * <p>Only the simulated results are checked. How long the loops took on the wall clock is printed,
+ * but it depends too much on the machine to fail a build over it.<p>
+ */
+public class AutonomousRegressionTest {
+    private static final Path kBaselineFile = Path.of("src", "test", "resources", "autoRegressionBaseline.properties");
+    private static final double kTimeoutSeconds = 15;
+
+    // A metric fails if it is worse than baseline * (1 + relative) + absolute.
+    private static final Metric kCompletionTime = new Metric("completionSeconds", 0.05, 0.1);
+    private static final Metric kTrackingError = new Metric("trackingRmsMeters", 0.2, 0.02);
+    private static final Metric kAllocations = new Metric("allocatedBytesPerLoop", 0.25, 1024);
+
+    private static final Properties baseline = new Properties();
+    private static boolean recording;
+    private static boolean baselineChanged;
+
+    @BeforeAll
+    static void loadBaseline() throws IOException {
+        recording = Boolean.getBoolean("recordBaseline");
+        // Recording keeps what is already there, so recording a single routine doesn't drop the others.
+        if (recording && !Files.exists(kBaselineFile)) return;
+        assumeTrue(Files.exists(kBaselineFile),
+            "No autonomous baseline at " + kBaselineFile.toAbsolutePath() + ", run the tests with -PrecordBaseline to record one");
+        try (InputStream input = Files.newInputStream(kBaselineFile)) {
+            baseline.load(input);
+        }
+    }
+
+    @AfterAll
+    static void saveBaseline() throws IOException {
+        if (!baselineChanged) return;
+        Files.createDirectories(kBaselineFile.getParent());
+        try (OutputStream output = Files.newOutputStream(kBaselineFile)) {
+            baseline.store(output, "Autonomous regression baseline, record a new one with ./gradlew test -PrecordBaseline");
+        }
+        System.out.println("Recorded a new autonomous baseline at " + kBaselineFile.toAbsolutePath());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        AutonomousConstants.kTimedAuto,
+        AutonomousConstants.kCameraAuto,
+        AutonomousConstants.kStabilize,
+        AutonomousConstants.kRamsete,
+        AutonomousConstants.kEncoder,
+        AutonomousConstants.kPath
+    })
+    void autonomousRegressionTest(String autoName) throws Exception {
+        RobotSimulationHarness.AutoResult result;
+        double trackingError;
+        try (var harness = new RobotSimulationHarness()) {
+            var robotContainer = harness.getRobotContainer();
+            var trajectory = robotContainer.getAutonomousTrajectory(autoName);
+            // Start the robot where the path starts, the path command doesn't move the odometry there.
+            trajectory.ifPresent(path ->
+                robotContainer.getDriveSubsystem().setSimulationPose(path.getInitialPose()));
+            var tracker = new TrackingError(trajectory.orElse(null));
+            result = harness.runCommand(robotContainer.getAutonomousCommand(autoName), kTimeoutSeconds, tracker::sample);
+            trackingError = tracker.getRms();
+        }
+
+        System.out.println(autoName + ": finished " + result.finished
+            + ", " + result.simulatedSeconds + "s, tracking RMS " + trackingError
+            + "m, peak loop " + result.peakLoopSeconds * 1000 + "ms, "
+            + result.allocatedBytesPerLoop + " bytes per loop");
+
+        List<String> regressions = new ArrayList<>();
+        List<String> missing = new ArrayList<>();
+        check(autoName, kCompletionTime, result.simulatedSeconds, regressions, missing);
+        check(autoName, kTrackingError, trackingError, regressions, missing);
+        check(autoName, kAllocations, result.allocatedBytesPerLoop, regressions, missing);
+        assertTrue(regressions.isEmpty(), autoName + " regressed: " + String.join(", ", regressions));
+        // Nothing to compare against isn't a regression, but the check didn't really run either.
+        assumeTrue(missing.isEmpty(), autoName + " has no baseline for " + String.join(", ", missing)
+            + ", record one with -PrecordBaseline");
+    }
+
+    private static void check(String autoName, Metric metric, double value, List<String> regressions, List<String> missing) {
+        // Routines without a path have no tracking error, and the JVM might not count allocations.
+        if (Double.isNaN(value)) return;
+        String key = autoName + "." + metric.name;
+        if (recording) {
+            baseline.setProperty(key, Double.toString(value));
+            baselineChanged = true;
+            return;
+        }
+        String stored = baseline.getProperty(key);
+        if (stored == null) {
+            missing.add(metric.name);
+            return;
+        }
+        double limit = metric.getLimit(Double.parseDouble(stored));
+        if (value > limit) {
+            regressions.add(metric.name + " " + value + " > " + limit + " (baseline " + stored + ")");
+        }
+    }
+
+    private static class Metric {
+        final String name;
+        final double relativeTolerance;
+        final double absoluteTolerance;
+
+        Metric(String name, double relativeTolerance, double absoluteTolerance) {
+            this.name = name;
+            this.relativeTolerance = relativeTolerance;
+            this.absoluteTolerance = absoluteTolerance;
+        }
+
+        double getLimit(double baselineValue) {
+            return baselineValue * (1 + relativeTolerance) + absoluteTolerance;
+        }
+    }
+
+    /**
+     * The RMS distance between the simulated robot and where the path says it should be.
+     */
+    private static class TrackingError {
+        private final Trajectory trajectory;
+        private double startTime = Double.NaN;
+        private double sumSquaredError;
+        private int samples;
+
+        TrackingError(Trajectory trajectory) {
+            this.trajectory = trajectory;
+        }
+
+        void sample(RobotSimulationHarness harness) {
+            if (trajectory == null) return;
+            // The first sample is the loop the command started on, which is time 0 of the path.
+            if (Double.isNaN(startTime)) startTime = harness.getTime();
+            var expected = trajectory.sample(harness.getTime() - startTime).poseMeters;
+            var actual = harness.getRobotContainer().getDriveSubsystem().getSimulatedPose();
+            double error = expected.getTranslation().getDistance(actual.getTranslation());
+            sumSquaredError += error * error;
+            samples++;
+        }
+
+        double getRms() {
+            return samples == 0 ? Double.NaN : Math.sqrt(sumSquaredError / samples);
+        }
+    }
+}
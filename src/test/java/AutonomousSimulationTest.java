@@ -0,0 +1,61 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import edu.wpi.first.wpilibj2.command.RunCommand;
+import frc.robot.Constants.AutonomousConstants;
+import frc.robot.simulation.RobotSimulationHarness;
+
+public class AutonomousSimulationTest {
+    RobotSimulationHarness harness;
+
+    @BeforeEach
+    void setup() {
+        harness = new RobotSimulationHarness();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        harness.close();
+    }
+
+    @Test
+    void timedAutoTest() {
+        var result = harness.runAutonomous(AutonomousConstants.kTimedAuto, 15);
+        assertTrue(result.finished);
+        // Intake for kRedlineTime, then drive for kDriveTime.
+        assertEquals(AutonomousConstants.kRedlineTime + AutonomousConstants.kDriveTime, result.simulatedSeconds, 0.1);
+        assertTrue(Math.abs(result.finalPose.getX()) > 0.1);
+        System.out.println("Timed auto took " + result.wallSeconds + "s on the wall clock");
+    }
+
+    @Test
+    void disabledRobotDoesNotMoveTest() {
+        harness.runFor(1);
+        assertEquals(0, harness.getRobotContainer().getDriveSubsystem().getSimulatedPose().getX(), 1e-9);
+    }
+
+    @Test
+    void wheelVelocityControlTest() {
+        var driveSubsystem = harness.getRobotContainer().getDriveSubsystem();
+        double[] lastSpeeds = new double[2];
+        double startTime = harness.getTime();
+        // Ramp up over a second like a trajectory would, then hold.
+        var command = new RunCommand(() -> {
+            double ramp = Math.min(1, harness.getTime() - startTime);
+            driveSubsystem.setWheelVelocities(ramp, ramp * 0.5);
+        }, driveSubsystem).withTimeout(3);
+        harness.runCommand(command, 4, h -> {
+            lastSpeeds[0] = driveSubsystem.getLeftEncoderRate();
+            lastSpeeds[1] = driveSubsystem.getRightEncoderRate();
+        });
+        assertEquals(1, lastSpeeds[0], 0.1);
+        assertEquals(0.5, lastSpeeds[1], 0.1);
+        // Disabling drops out of velocity control.
+        harness.runFor(0.1);
+        assertTrue(!driveSubsystem.isVelocityControlled());
+    }
+}
@@ -0,0 +1,115 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import edu.wpi.first.hal.HAL;
+import frc.robot.commands.DriveCharacterizationCmd;
+import frc.robot.subsystems.DriveCharacterizationAnalysis;
+import frc.robot.subsystems.DriveCharacterizationLog;
+import frc.robot.subsystems.DriveGains;
+import frc.robot.simulation.RobotSimulationHarness;
+
+public class DriveCharacterizationTest {
+    static final double DELTA = 1e-3;
+    static final double ks = 0.8;
+    static final double kv = 2.5;
+    static final double ka = 0.4;
+    static final double dt = 0.005;
+
+    /**
+     * Drives a perfect feedforward model, both sides the same.
+     */
+    static DriveCharacterizationLog simulate(double rampVoltsPerSecond, double stepVolts, double direction, double seconds) {
+        var log = new DriveCharacterizationLog((int) (seconds / dt) + 1);
+        double position = 0;
+        double velocity = 0;
+        for (double t = 0; t < seconds; t += dt) {
+            double volts = direction * (stepVolts + rampVoltsPerSecond * t);
+            double acceleration = Math.abs(volts) > ks || velocity != 0
+                ? (volts - ks * Math.signum(volts) - kv * velocity) / ka
+                : 0;
+            log.add(t, volts, volts, position, position, velocity, velocity, 0);
+            velocity += acceleration * dt;
+            position += velocity * dt;
+        }
+        return log;
+    }
+
+    @Test
+    void fitsFeedforwardTest() {
+        var fit = DriveCharacterizationAnalysis.fitFeedforward(0.05,
+            simulate(0.5, 0, 1, 10), simulate(0.5, 0, -1, 10),
+            simulate(0, 6, 1, 2), simulate(0, 6, -1, 2));
+        assertTrue(fit.isPresent());
+        // The central difference lags a little behind the Euler steps, so allow a few percent.
+        assertEquals(ks, fit.get().ksVolts, ks * 0.05);
+        assertEquals(kv, fit.get().kvVoltSecondsPerMeter, kv * 0.05);
+        assertEquals(ka, fit.get().kaVoltSecondsSquaredPerMeter, ka * 0.05);
+        assertTrue(fit.get().rSquared > 0.99);
+    }
+
+    @Test
+    void notMovingCantBeFittedTest() {
+        var log = new DriveCharacterizationLog(100);
+        for (int i = 0; i < 100; i++) {
+            log.add(i * dt, 0.5, 0.5, 0, 0, 0, 0, 0);
+        }
+        assertFalse(DriveCharacterizationAnalysis.fitFeedforward(0.05, log).isPresent());
+    }
+
+    @Test
+    void fitsTrackwidthTest() {
+        double trackwidth = 0.65;
+        var log = new DriveCharacterizationLog(400);
+        for (int i = 0; i < 400; i++) {
+            // Turning counterclockwise, so the gyro goes negative.
+            double headingRadians = i * 0.01;
+            double wheel = headingRadians * trackwidth / 2;
+            log.add(i * dt, -4, 4, -wheel, wheel, 0, 0, -Math.toDegrees(headingRadians));
+        }
+        assertEquals(trackwidth, DriveCharacterizationAnalysis.fitTrackwidth(log), DELTA);
+    }
+
+    @Test
+    void saveAndLoadGainsTest(@TempDir Path directory) throws Exception {
+        HAL.initialize(500, 0);
+        Path file = directory.resolve("characterization").resolve("drive.properties");
+        var gains = new DriveGains(ks, kv, ka, 0.65);
+        gains.save(file, "test");
+        var loaded = DriveGains.load(file);
+        assertEquals(ks, loaded.ksVolts, DELTA);
+        assertEquals(kv, loaded.kvVoltSecondsPerMeter, DELTA);
+        assertEquals(ka, loaded.kaVoltSecondsSquaredPerMeter, DELTA);
+        assertEquals(0.65, loaded.trackwidthMeters, DELTA);
+    }
+
+    @Test
+    void missingOrBrokenGainsUseDefaultTest(@TempDir Path directory) throws Exception {
+        HAL.initialize(500, 0);
+        var defaults = DriveGains.getDefault();
+        assertEquals(defaults.trackwidthMeters, DriveGains.load(directory.resolve("missing.properties")).trackwidthMeters, DELTA);
+        Path broken = directory.resolve("broken.properties");
+        Files.writeString(broken, "ksVolts=1\nkvVoltSecondsPerMeter=-2\n");
+        assertEquals(defaults.kvVoltSecondsPerMeter, DriveGains.load(broken).kvVoltSecondsPerMeter, DELTA);
+    }
+
+    @Test
+    void simulatedTrackwidthTest() throws Exception {
+        try (var harness = new RobotSimulationHarness()) {
+            var driveSubsystem = harness.getRobotContainer().getDriveSubsystem();
+            var log = new DriveCharacterizationLog(1000);
+            var command = new DriveCharacterizationCmd(driveSubsystem, DriveCharacterizationCmd.Test.TRACKWIDTH, log)
+                .withTimeout(2);
+            harness.runCommand(command, 3, h -> {});
+            assertTrue(log.size() > 100, "The fast loop should have recorded the test");
+            assertEquals(driveSubsystem.getKinematics().trackWidthMeters,
+                DriveCharacterizationAnalysis.fitTrackwidth(log), 0.01);
+        }
+    }
+}
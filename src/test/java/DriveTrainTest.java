@@ -1,10 +1,13 @@
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import edu.wpi.first.wpilibj.simulation.DriverStationSim;
 import edu.wpi.first.wpilibj.simulation.EncoderSim;
+import edu.wpi.first.wpilibj.simulation.SimHooks;
 
 import edu.wpi.first.hal.HAL;
 import frc.robot.subsystems.DriveSubsystem;
@@ -53,6 +56,21 @@ public class DriveTrainTest {
         assertEquals(driveSubsystem.getRightEncoderDistance(), 5, delta);
     }
 
+    @Test
+    void FastLoopOdometryTest() throws Exception {
+        driveSubsystem.runGyroLoop();
+        sim_leftEncoder.setDistance(1);
+        sim_rightEncoder.setDistance(1);
+        // The pose moves in the fast loop, without waiting for periodic().
+        driveSubsystem.runGyroLoop();
+        assertEquals(1, driveSubsystem.getPose().getX(), 1e-6);
+        assertEquals(1, driveSubsystem.getEstimatedPose().getX(), 1e-6);
+        // Resetting the encoders doesn't move the robot.
+        driveSubsystem.resetEncoders();
+        driveSubsystem.runGyroLoop();
+        assertEquals(1, driveSubsystem.getPose().getX(), 1e-6);
+    }
+
     @Test
     void EncoderRateTest() throws Exception {
         sim_leftEncoder.setRate(5);
@@ -78,4 +96,28 @@ public class DriveTrainTest {
     void DriveTrainTurnTest() throws Exception {
         driveSubsystem.drive(0, 1);
     }
+
+    @Test
+    void SimulatedDriveTest() throws Exception {
+        SimHooks.pauseTiming();
+        DriverStationSim.setEnabled(true);
+        DriverStationSim.notifyNewData();
+        try {
+            for (int i = 0; i < 50; i++) {
+                // Left slower than right, so we drive forward and turn counterclockwise.
+                driveSubsystem.setMotorVoltage(4, 6);
+                SimHooks.stepTiming(0.02);
+                driveSubsystem.simulationPeriodic();
+            }
+            assertTrue(driveSubsystem.getLeftEncoderDistance() > 0);
+            assertTrue(driveSubsystem.getRightEncoderDistance() > driveSubsystem.getLeftEncoderDistance());
+            assertTrue(driveSubsystem.getSimulatedPose().getX() > 0);
+            // The gyro is clockwise positive.
+            assertTrue(driveSubsystem.getAngle() < 0);
+        } finally {
+            DriverStationSim.setEnabled(false);
+            DriverStationSim.notifyNewData();
+            SimHooks.resumeTiming();
+        }
+    }
 }
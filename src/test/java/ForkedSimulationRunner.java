@@ -0,0 +1,88 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs simulations on every core by starting a new JVM for each batch.
+ * <p>The HAL, NetworkTables and the command scheduler are shared by the whole program,
+ * so two robots can't be simulated in the same JVM at the same time. Each batch gets its own
+ * JVM with the same classpath and native libraries, and sends its results back as lines starting with {@link #kResultPrefix}.<p>
+ */
+public final class ForkedSimulationRunner {
+    /** Lines a worker prints starting with this are results, everything else is passed through as logs. */
+    public static final String kResultPrefix = "RESULT ";
+
+    private ForkedSimulationRunner() {}
+
+    /**
+     * Runs one worker JVM for each argument list, as many at a time as there are cores.
+     * @param mainClass The class with the worker's main method.
+     * @param workerArgs The arguments of each worker.
+     * @return The result lines of every worker (without the prefix), in the order of the workers.
+     * @throws IOException if a worker failed.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public static List<String> run(Class<?> mainClass, List<List<String>> workerArgs) throws IOException, InterruptedException {
+        int threads = Math.min(Runtime.getRuntime().availableProcessors(), Math.max(workerArgs.size(), 1));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<List<String>>> futures = new ArrayList<>();
+            for (var args : workerArgs) {
+                futures.add(executor.submit(() -> runWorker(mainClass, args)));
+            }
+            List<String> results = new ArrayList<>();
+            for (var future : futures) {
+                try {
+                    results.addAll(future.get());
+                } catch (ExecutionException e) {
+                    throw new IOException("Simulation worker failed", e.getCause());
+                }
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return How many workers to split the work into, one per core.
+     */
+    public static int getWorkerCount() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    private static List<String> runWorker(Class<?> mainClass, List<String> args) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.add("-Djava.library.path=" + System.getProperty("java.library.path"));
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(mainClass.getName());
+        command.addAll(args);
+
+        Process process = new ProcessBuilder(command)
+            .redirectError(ProcessBuilder.Redirect.INHERIT)
+            .start();
+        List<String> results = new ArrayList<>();
+        try (var reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(kResultPrefix)) {
+                    results.add(line.substring(kResultPrefix.length()));
+                }
+            }
+        }
+        int exitCode = process.waitFor();
+        if (exitCode != 0) {
+            throw new IOException("Simulation worker " + args + " exited with code " + exitCode);
+        }
+        return results;
+    }
+}
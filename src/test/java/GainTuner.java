@@ -0,0 +1,342 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import com.pathplanner.lib.PathPlannerTrajectory;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj2.command.Command;
+import frc.robot.Constants.AutonomousConstants;
+import frc.robot.Constants.DriveConstants.VelocityControlConstants;
+import frc.robot.Constants.PhotonVisionConstants;
+import frc.robot.Constants.SimulationConstants.GainTunerConstants;
+import frc.robot.abstract_classes.PIDConstants;
+import frc.robot.commands.EncoderDriveCmd;
+import frc.robot.commands.VisionTargettingCmd;
+import frc.robot.simulation.RobotSimulationHarness;
+import frc.robot.subsystems.AprilTagFieldCache;
+import frc.robot.subsystems.DriveSubsystem;
+
+/**
+ * Searches for better controller gains by trying random gain sets in the headless simulator.
+ * <p>Every candidate is scored on how long it takes to settle, how far it overshoots and how well it tracks,
+ * see {@link Metrics#score()}. The first candidate is always the current gains from {@code Constants},
+ * so the report shows whether anything beat them. The candidates are split between one JVM per core,
+ * see {@link ForkedSimulationRunner}.<p>
+ * <p>The pitch and intake gains are not tuned here, the simulation has no charge station or intake arm.<p>
+ * <p>Only the Pi camera's targetting gains are tuned. The wide camera's {@code robotToCam} puts it at floor height
+ * pitched 30 degrees down (WPILib pitch is positive down), so its simulated camera never sees a tag and every
+ * candidate would score the same. Add a scenario for it once its mount is measured.<p>
+ */
+public final class GainTuner {
+    private GainTuner() {}
+
+    /**
+     * What to tune, each one runs a command in the simulator and tunes the gains it uses.
+     */
+    public enum Scenario {
+        /** {@link EncoderDriveCmd}: heading P, I, D then encoder P, I, D. */
+        ENCODER_DRIVE(
+            new String[] {"heading kP", "heading kI", "heading kD", "encoder kP", "encoder kI", "encoder kD"},
+            new double[] {
+                AutonomousConstants.headingPIDConstants.kP, AutonomousConstants.headingPIDConstants.kI, AutonomousConstants.headingPIDConstants.kD,
+                AutonomousConstants.EncoderPIDConstants.kP, AutonomousConstants.EncoderPIDConstants.kI, AutonomousConstants.EncoderPIDConstants.kD},
+            new double[] {0.1, 0.05, 0.01, 2, 0.5, 0.5}),
+        /** The fast loop wheel velocity controllers, while following the path follow auto: P, I, D. */
+        PATH_FOLLOW(
+            new String[] {"wheel kP", "wheel kI", "wheel kD"},
+            new double[] {VelocityControlConstants.kP, VelocityControlConstants.kI, VelocityControlConstants.kD},
+            new double[] {10, 1, 1}),
+        /** {@link VisionTargettingCmd} with the Pi camera: foward P, I, D then turn P, I, D. */
+        VISION_TARGETTING(
+            new String[] {"foward kP", "foward kI", "foward kD", "turn kP", "turn kI", "turn kD"},
+            new double[] {
+                PhotonVisionConstants.PiCamera.FowardPIDConstants.kP, PhotonVisionConstants.PiCamera.FowardPIDConstants.kI, PhotonVisionConstants.PiCamera.FowardPIDConstants.kD,
+                PhotonVisionConstants.PiCamera.TurnPIDConstants.kP, PhotonVisionConstants.PiCamera.TurnPIDConstants.kI, PhotonVisionConstants.PiCamera.TurnPIDConstants.kD},
+            new double[] {1, 0.1, 0.1, 0.2, 0.05, 0.05});
+
+        final String[] gainNames;
+        final double[] currentGains;
+        final double[] maxGains;
+
+        Scenario(String[] gainNames, double[] currentGains, double[] maxGains) {
+            this.gainNames = gainNames;
+            this.currentGains = currentGains;
+            this.maxGains = maxGains;
+        }
+    }
+
+    /**
+     * How well a gain set did.
+     */
+    public static class Metrics {
+        public final boolean settled;
+        /** When the output last left its tolerance, or the whole run if it never settled. */
+        public final double settleSeconds;
+        /** How far past the goal it went, in the scenario's units. */
+        public final double overshoot;
+        /** The RMS tracking error during the run, in the scenario's units. */
+        public final double trackingError;
+
+        public Metrics(boolean settled, double settleSeconds, double overshoot, double trackingError) {
+            this.settled = settled;
+            this.settleSeconds = settleSeconds;
+            this.overshoot = overshoot;
+            this.trackingError = trackingError;
+        }
+
+        /**
+         * @return The score of the run, lower is better.
+         */
+        public double score() {
+            return settleSeconds
+                + overshoot * GainTunerConstants.kOvershootWeight
+                + trackingError * GainTunerConstants.kTrackingErrorWeight
+                + (settled ? 0 : GainTunerConstants.kNotSettledPenalty);
+        }
+    }
+
+    /**
+     * A gain set and how it did.
+     */
+    public static class Candidate {
+        public final int index;
+        public final double[] gains;
+        public final Metrics metrics;
+
+        Candidate(int index, double[] gains, Metrics metrics) {
+            this.index = index;
+            this.gains = gains;
+            this.metrics = metrics;
+        }
+    }
+
+    /**
+     * Tunes a scenario and prints the ranked candidates.
+     * <p>Usage: {@code GainTuner <scenario> [candidates] [seed]}<p>
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("--worker")) {
+            runWorker(Scenario.valueOf(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]), Long.parseLong(args[4]));
+            System.exit(0);
+        }
+        var scenario = Scenario.valueOf(args[0]);
+        int candidates = args.length > 1 ? Integer.parseInt(args[1]) : GainTunerConstants.kDefaultCandidates;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : GainTunerConstants.kDefaultSeed;
+        System.out.println(formatReport(scenario, tune(scenario, candidates, seed)));
+    }
+
+    /**
+     * Tries the current gains and {@code candidates - 1} random gain sets.
+     * @param scenario What to tune.
+     * @param candidates How many gain sets to try.
+     * @param seed The seed the gain sets are made from, the same seed gives the same gain sets.
+     * @return Every candidate, best first.
+     */
+    public static List<Candidate> tune(Scenario scenario, int candidates, long seed) throws IOException, InterruptedException {
+        int workers = Math.min(ForkedSimulationRunner.getWorkerCount(), candidates);
+        List<List<String>> workerArgs = new ArrayList<>();
+        for (int worker = 0; worker < workers; worker++) {
+            int start = candidates * worker / workers;
+            int end = candidates * (worker + 1) / workers;
+            workerArgs.add(List.of("--worker", scenario.name(), Integer.toString(start), Integer.toString(end - start), Long.toString(seed)));
+        }
+        List<Candidate> results = new ArrayList<>();
+        for (String line : ForkedSimulationRunner.run(GainTuner.class, workerArgs)) {
+            String[] parts = line.trim().split(" ");
+            int index = Integer.parseInt(parts[0]);
+            results.add(new Candidate(index, getGains(scenario, index, seed), new Metrics(
+                Boolean.parseBoolean(parts[1]), Double.parseDouble(parts[2]), Double.parseDouble(parts[3]), Double.parseDouble(parts[4]))));
+        }
+        results.sort(Comparator.comparingDouble(candidate -> candidate.metrics.score()));
+        return results;
+    }
+
+    /**
+     * Makes a candidate's gains, the same index and seed always give the same gains.
+     * @param scenario What is being tuned.
+     * @param index The candidate, 0 is the current gains.
+     * @param seed The seed of the search.
+     * @return The gains, in the order of the scenario's gain names.
+     */
+    public static double[] getGains(Scenario scenario, int index, long seed) {
+        if (index == 0) return scenario.currentGains.clone();
+        var random = new Random(seed * 31 + index);
+        double[] gains = new double[scenario.maxGains.length];
+        for (int i = 0; i < gains.length; i++) {
+            // Half of the time leave I and D out, most controllers here only need P.
+            boolean isProportional = i % 3 == 0;
+            if (!isProportional && random.nextBoolean()) continue;
+            gains[i] = random.nextDouble() * scenario.maxGains[i];
+        }
+        return gains;
+    }
+
+    private static void runWorker(Scenario scenario, int start, int count, long seed) throws Exception {
+        for (int index = start; index < start + count; index++) {
+            Metrics metrics = evaluate(scenario, getGains(scenario, index, seed));
+            System.out.println(ForkedSimulationRunner.kResultPrefix + index + " " + metrics.settled + " "
+                + metrics.settleSeconds + " " + metrics.overshoot + " " + metrics.trackingError);
+        }
+    }
+
+    /**
+     * Runs a scenario with a gain set in a new simulated robot.
+     * @param scenario What to run.
+     * @param gains The gains, in the order of the scenario's gain names.
+     * @return How it did.
+     */
+    public static Metrics evaluate(Scenario scenario, double[] gains) throws Exception {
+        try (var harness = new RobotSimulationHarness()) {
+            switch (scenario) {
+                case ENCODER_DRIVE:
+                    return evaluateEncoderDrive(harness, gains);
+                case PATH_FOLLOW:
+                    return evaluatePathFollow(harness, gains);
+                case VISION_TARGETTING:
+                    return evaluateVisionTargetting(harness, gains);
+                default:
+                    throw new IllegalArgumentException("Unknown scenario " + scenario);
+            }
+        }
+    }
+
+    private static Metrics evaluateEncoderDrive(RobotSimulationHarness harness, double[] gains) {
+        var driveSubsystem = harness.getRobotContainer().getDriveSubsystem();
+        double target = AutonomousConstants.kDriveAmount;
+        double tolerance = AutonomousConstants.EncoderPIDConstants.kToleranceMeters;
+        double startHeading = driveSubsystem.getAngle();
+        var tracker = new ErrorTracker();
+        Command command = new EncoderDriveCmd(driveSubsystem, target,
+            new PIDConstants(gains[0], gains[1], gains[2]),
+            new PIDConstants(gains[3], gains[4], gains[5]));
+        var result = harness.runCommand(command, GainTunerConstants.kTimeoutSeconds, h -> {
+            double distance = driveSubsystem.getAvarageEncoderDistance();
+            tracker.add(h.getTime(), distance - target, tolerance, driveSubsystem.getAngle() - startHeading);
+        });
+        return tracker.getMetrics(result.finished);
+    }
+
+    private static Metrics evaluatePathFollow(RobotSimulationHarness harness, double[] gains) {
+        var driveSubsystem = harness.getRobotContainer().getDriveSubsystem();
+        // The command mirrors the path for the alliance when it starts, so do the same to compare against it.
+        PathPlannerTrajectory trajectory = PathPlannerTrajectory.transformTrajectoryForAlliance(
+            DriveSubsystem.loadFowardPath(), DriverStation.getAlliance());
+        driveSubsystem.setSimulationPose(trajectory.getInitialPose());
+        double startTime = harness.getTime();
+        var tracker = new ErrorTracker();
+        var result = harness.runCommand(driveSubsystem.pathFollowCommand(new PIDConstants(gains[0], gains[1], gains[2])),
+            GainTunerConstants.kTimeoutSeconds, h -> {
+                double time = h.getTime() - startTime;
+                Pose2d reference = trajectory.sample(time).poseMeters;
+                double error = driveSubsystem.getSimulatedPose().getTranslation().getDistance(reference.getTranslation());
+                tracker.add(h.getTime(), 0, 0, error);
+            });
+        // There is no overshoot on a path, use how far from the end we stopped.
+        double endError = result.finalPose.getTranslation().getDistance(trajectory.getEndState().poseMeters.getTranslation());
+        return new Metrics(result.finished, result.simulatedSeconds, endError, tracker.getRmsTrackingError());
+    }
+
+    private static Metrics evaluateVisionTargetting(RobotSimulationHarness harness, double[] gains) {
+        var driveSubsystem = harness.getRobotContainer().getDriveSubsystem();
+        int tagId = AutonomousConstants.AlignConstants.kBlueGridTagId;
+        AprilTagFieldCache.getLayout();
+        // In front of the tag, facing it but turned a bit so there is something to fix.
+        driveSubsystem.setSimulationPose(new Pose2d(
+            AprilTagFieldCache.getTagX(tagId) + GainTunerConstants.kVisionStartDistanceMeters,
+            AprilTagFieldCache.getTagY(tagId),
+            Rotation2d.fromDegrees(180 + GainTunerConstants.kVisionStartYawDegrees)));
+        var tracker = new ErrorTracker();
+        Command command = new VisionTargettingCmd(driveSubsystem,
+            new PIDConstants(gains[0], gains[1], gains[2]),
+            new PIDConstants(gains[3], gains[4], gains[5]));
+        harness.runCommand(command, GainTunerConstants.kVisionRunSeconds, h -> {
+            var result = driveSubsystem.getCameraSystem().getLatestResult();
+            double yaw = result.hasTargets() ? result.getBestTarget().getYaw() : GainTunerConstants.kLostTargetYawDegrees;
+            tracker.add(h.getTime(), yaw, GainTunerConstants.kVisionYawToleranceDegrees, yaw);
+        });
+        // The command never ends by itself, it's done if it settled before the time ran out.
+        return tracker.getMetrics(false);
+    }
+
+    /**
+     * Makes a report of the best candidates.
+     * @param scenario What was tuned.
+     * @param candidates The candidates, best first.
+     * @return The report.
+     */
+    public static String formatReport(Scenario scenario, List<Candidate> candidates) {
+        var report = new StringBuilder();
+        report.append("Gain search results for ").append(scenario).append(" (").append(candidates.size()).append(" candidates)\n");
+        report.append(String.format("%-5s %-6s %8s %8s %9s %9s %8s  %s%n", "rank", "index", "score", "settle", "overshoot", "tracking", "settled", "gains"));
+        for (int rank = 0; rank < candidates.size(); rank++) {
+            var candidate = candidates.get(rank);
+            // Always show the current gains, even if they are not near the top.
+            if (rank >= GainTunerConstants.kReportCount && candidate.index != 0) continue;
+            var metrics = candidate.metrics;
+            var gains = new StringBuilder();
+            for (int i = 0; i < candidate.gains.length; i++) {
+                if (i > 0) gains.append(", ");
+                gains.append(scenario.gainNames[i]).append('=').append(String.format("%.4f", candidate.gains[i]));
+            }
+            report.append(String.format("%-5d %-6s %8.3f %8.3f %9.3f %9.3f %8s  %s%n",
+                rank + 1, candidate.index == 0 ? "current" : Integer.toString(candidate.index),
+                metrics.score(), metrics.settleSeconds, metrics.overshoot, metrics.trackingError, metrics.settled, gains));
+        }
+        return report.toString();
+    }
+
+    /**
+     * Keeps track of the settle time, overshoot and RMS tracking error while a scenario runs.
+     */
+    private static class ErrorTracker {
+        private double startTime = Double.NaN;
+        private double lastTime;
+        private double lastOutsideTime;
+        private double firstErrorSign;
+        private double overshoot;
+        private double squaredTrackingError;
+        private int samples;
+
+        /**
+         * @param time The current time.
+         * @param error How far from the goal we are, positive is past it.
+         * @param tolerance How close to the goal counts as settled.
+         * @param trackingError The error used for the RMS tracking error.
+         */
+        void add(double time, double error, double tolerance, double trackingError) {
+            if (Double.isNaN(startTime)) {
+                startTime = time;
+                lastOutsideTime = time;
+            }
+            lastTime = time;
+            if (Math.abs(error) > tolerance) lastOutsideTime = time;
+            // Overshoot is how far we went past the goal after crossing it.
+            if (firstErrorSign == 0) firstErrorSign = Math.signum(error);
+            if (firstErrorSign != 0 && Math.signum(error) == -firstErrorSign) {
+                overshoot = Math.max(overshoot, Math.abs(error));
+            }
+            squaredTrackingError += trackingError * trackingError;
+            samples++;
+        }
+
+        double getRmsTrackingError() {
+            return samples == 0 ? 0 : Math.sqrt(squaredTrackingError / samples);
+        }
+
+        /**
+         * @param finished true if the command ended by itself.
+         */
+        Metrics getMetrics(boolean finished) {
+            if (samples == 0) return new Metrics(false, 0, 0, 0);
+            // If it was still outside the tolerance at the very end, it never settled.
+            boolean settled = finished || lastOutsideTime < lastTime;
+            double settleSeconds = settled ? lastOutsideTime - startTime : lastTime - startTime;
+            return new Metrics(settled, settleSeconds, overshoot, getRmsTrackingError());
+        }
+    }
+}
@@ -0,0 +1,35 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import frc.robot.Constants.AutonomousConstants;
+
+public class GainTunerTest {
+    @Test
+    void firstCandidateIsCurrentGainsTest() {
+        double[] gains = GainTuner.getGains(GainTuner.Scenario.ENCODER_DRIVE, 0, 1);
+        assertEquals(AutonomousConstants.headingPIDConstants.kP, gains[0]);
+        assertEquals(AutonomousConstants.EncoderPIDConstants.kP, gains[3]);
+    }
+
+    @Test
+    void candidatesRepeatTest() {
+        assertArrayEquals(GainTuner.getGains(GainTuner.Scenario.PATH_FOLLOW, 7, 3), GainTuner.getGains(GainTuner.Scenario.PATH_FOLLOW, 7, 3));
+        for (int i = 1; i < 50; i++) {
+            for (double gain : GainTuner.getGains(GainTuner.Scenario.VISION_TARGETTING, i, 3)) {
+                assertTrue(gain >= 0);
+            }
+        }
+    }
+
+    @Test
+    void scoreTest() {
+        var fast = new GainTuner.Metrics(true, 1, 0, 0);
+        var overshooting = new GainTuner.Metrics(true, 1, 0.5, 0);
+        var unsettled = new GainTuner.Metrics(false, 1, 0, 0);
+        assertTrue(fast.score() < overshooting.score());
+        assertTrue(overshooting.score() < unsettled.score());
+    }
+}
@@ -0,0 +1,19 @@
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import frc.robot.Constants.SimulationConstants.GainTunerConstants;
+
+/**
+ * Not a real test, runs the gain search through gradle so the simulation native libraries are set up.
+ * Run it with {@code ./gradlew tuneGains -Pscenario=ENCODER_DRIVE -Pcandidates=64}
+ */
+@Tag("tool")
+public class GainTunerTool {
+    @Test
+    void tuneGains() throws Exception {
+        var scenario = GainTuner.Scenario.valueOf(System.getProperty("scenario", GainTuner.Scenario.ENCODER_DRIVE.name()));
+        int candidates = Integer.getInteger("candidates", GainTunerConstants.kDefaultCandidates);
+        long seed = Long.getLong("seed", GainTunerConstants.kDefaultSeed);
+        System.out.println(GainTuner.formatReport(scenario, GainTuner.tune(scenario, candidates, seed)));
+    }
+}
@@ -0,0 +1,142 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.simulation.SimHooks;
+import edu.wpi.first.wpilibj.smartdashboard.Field2d;
+import frc.robot.Constants.DriveConstants.GyroDriftConstants;
+import frc.robot.Constants.PhotonVisionConstants;
+import frc.robot.subsystems.AprilTagFieldCache;
+import frc.robot.subsystems.DriveSubsystem;
+import frc.robot.subsystems.GyroDriftCorrector;
+import frc.robot.subsystems.VisionMeasurementFilter;
+
+public class GyroDriftCorrectorTest {
+    static final double DELTA = 1e-6;
+    GyroDriftCorrector corrector;
+
+    @BeforeEach
+    void setup() {
+        corrector = new GyroDriftCorrector();
+    }
+
+    @Test
+    void firstMeasurementIsReferenceTest() {
+        corrector.addMeasurement(1, Math.toRadians(90), 45);
+        assertTrue(corrector.hasReference());
+        assertEquals(0, corrector.takeAngleCorrection(1), DELTA);
+    }
+
+    @Test
+    void noDriftNoCorrectionTest() {
+        corrector.addMeasurement(1, Math.toRadians(90), 0);
+        // Turned 30 degrees clockwise, vision and gyro agree.
+        corrector.addMeasurement(2, Math.toRadians(60), 30);
+        assertEquals(0, corrector.takeAngleCorrection(1), DELTA);
+    }
+
+    @Test
+    void correctsDriftSmoothlyTest() {
+        corrector.addMeasurement(1, 0, 0);
+        // The gyro says we turned 10 degrees, vision says we didn't.
+        for (int i = 0; i < 20; i++) {
+            corrector.addMeasurement(2 + i * 0.05, 0, 10);
+        }
+        double dt = 0.02;
+        double step = corrector.takeAngleCorrection(dt);
+        assertTrue(step > 0);
+        assertTrue(step <= GyroDriftConstants.kMaxCorrectionRateDegrees * dt + DELTA);
+    }
+
+    @Test
+    void convergesWithoutOvershootTest() {
+        double dt = 0.02;
+        double angleOffset = 0;
+        corrector.addMeasurement(0, 0, 0);
+        // The gyro jumped 10 degrees clockwise, vision sees a frame every loop.
+        double angle = 10;
+        for (double t = dt; t < 20; t += dt) {
+            corrector.addMeasurement(t, 0, angle - angleOffset);
+            angleOffset += corrector.takeAngleCorrection(dt);
+            assertTrue(angle - angleOffset > -0.01, "Overshot to " + (angle - angleOffset));
+        }
+        assertEquals(0, angle - angleOffset, 0.05);
+    }
+
+    @Test
+    void correctsBiasClosedLoopTest() {
+        double dt = 0.02;
+        double bias = 0.5;
+        double rawAngle = 0;
+        double angleOffset = 0;
+        double rateOffset = 0;
+        double maxError = 0;
+        // The robot sits still, vision sees a frame every loop and the gyro drifts clockwise.
+        for (double t = 0; t < 180; t += dt) {
+            rawAngle += (bias - rateOffset) * dt;
+            double angle = rawAngle - angleOffset;
+            corrector.addMeasurement(t, 0, angle);
+            angleOffset += corrector.takeAngleCorrection(dt);
+            rateOffset += corrector.takeRateCorrection();
+            if (t > 150) maxError = Math.max(maxError, Math.abs(angle));
+        }
+        assertTrue(maxError < 0.25, "Heading error " + maxError);
+        assertEquals(bias, rateOffset, 0.05);
+    }
+
+    @Test
+    void wrapsAroundTest() {
+        corrector.addMeasurement(1, Math.toRadians(179), 0);
+        corrector.addMeasurement(2, Math.toRadians(-179), -2);
+        assertEquals(0, corrector.takeAngleCorrection(1), DELTA);
+    }
+
+    @Test
+    void usableTest() {
+        assertTrue(GyroDriftCorrector.isUsable(2, 0.1, 0));
+        assertFalse(GyroDriftCorrector.isUsable(1, 0.1, 0));
+        assertFalse(GyroDriftCorrector.isUsable(3, 0.1, 1000));
+    }
+
+    @Test
+    void filteredVisionMovesOffsetTest() throws Exception {
+        HAL.initialize(500, 0);
+        SimHooks.pauseTiming();
+        AprilTagFieldCache.getLayout();
+        double tagX = AprilTagFieldCache.getTagX(1);
+        double tagY = AprilTagFieldCache.getTagY(1);
+        // Two tags from 3 meters on the camera we trust least, what the filter really gives such a pose.
+        var filter = new VisionMeasurementFilter(PhotonVisionConstants.WideCamera.kVisionStdDevScale);
+        double[] stdDevs = new double[3];
+        assertTrue(filter.calculateStdDevs(tagX - 3, tagY, 0, new int[] {1, 2}, 2, 0, Double.NaN, Double.NaN, stdDevs));
+
+        var driveSubsystem = new DriveSubsystem(new Field2d());
+        try {
+            double time = Timer.getFPGATimestamp();
+            assertTrue(driveSubsystem.addDriftMeasurement(time, 0, 2, stdDevs[2]));
+            // Vision says we turned 10 degrees clockwise, the gyro didn't see it.
+            assertTrue(driveSubsystem.addDriftMeasurement(time, Math.toRadians(-10), 2, stdDevs[2]));
+            double angle = driveSubsystem.getAngle();
+            SimHooks.stepTiming(0.5);
+            driveSubsystem.periodic();
+            assertTrue(driveSubsystem.getAngle() > angle, "The angle offset didn't move");
+        } finally {
+            driveSubsystem.close();
+            SimHooks.resumeTiming();
+        }
+    }
+
+    @Test
+    void resetForgetsReferenceTest() {
+        corrector.addMeasurement(1, 0, 0);
+        corrector.reset();
+        assertFalse(corrector.hasReference());
+        corrector.addMeasurement(2, 0, 50);
+        assertEquals(0, corrector.takeAngleCorrection(1), DELTA);
+    }
+}
@@ -0,0 +1,102 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.wpilibj.simulation.DriverStationSim;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import edu.wpi.first.wpilibj2.command.InstantCommand;
+import edu.wpi.first.wpilibj2.command.RunCommand;
+import frc.robot.utils.LatencyHistogram;
+import frc.robot.utils.LoopProfiler;
+import frc.robot.utils.ProfiledCommand;
+
+public class LoopProfilerTest {
+    @BeforeEach
+    void setup() {
+        HAL.initialize(500, 0);
+        DriverStationSim.setEnabled(true);
+        DriverStationSim.notifyNewData();
+    }
+
+    @AfterEach
+    void shutdown() {
+        CommandScheduler.getInstance().cancelAll();
+    }
+
+    @Test
+    void histogramPercentilesTest() {
+        var histogram = new LatencyHistogram();
+        // 98 fast loops at 1 ms and two slow ones at 15 ms.
+        for (int i = 0; i < 98; i++) histogram.record(1_000_000);
+        histogram.record(15_000_000);
+        histogram.record(15_000_000);
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(0.001, histogram.getPercentileSeconds(0.5), 0.001 * 0.125);
+        assertEquals(0.015, histogram.getPercentileSeconds(0.99), 0.015 * 0.125);
+        assertEquals(0.015, histogram.getMaxSeconds(), 1e-9);
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentileSeconds(0.99));
+    }
+
+    @Test
+    void longDurationsGoInTheLastBucketTest() {
+        var histogram = new LatencyHistogram();
+        histogram.record(5_000_000_000L);
+        // Past the last bucket only the max is known.
+        assertEquals(5, histogram.getPercentileSeconds(0.5), 1e-9);
+        assertEquals(5, histogram.getMaxSeconds(), 1e-9);
+    }
+
+    @Test
+    void sectionsAreSharedByNameTest() {
+        assertSame(LoopProfiler.section("Test.shared"), LoopProfiler.section("Test.shared"));
+    }
+
+    @Test
+    void timedSectionStopsWhenItThrowsTest() {
+        var section = LoopProfiler.section("Test.throws");
+        long count = section.getHistogram().getCount();
+        assertThrows(IllegalStateException.class, () -> section.time(() -> {
+            throw new IllegalStateException();
+        }));
+        assertEquals(count + 1, section.getHistogram().getCount());
+    }
+
+    @Test
+    void profiledCommandTest() {
+        var command = new ProfiledCommand(new RunCommand(() -> {}), "Test Command");
+        var execute = LoopProfiler.section("Test Command.execute");
+        var end = LoopProfiler.section("Test Command.end");
+        long executeCount = execute.getHistogram().getCount();
+        long endCount = end.getHistogram().getCount();
+
+        command.schedule();
+        for (int i = 0; i < 3; i++) {
+            LoopProfiler.startCycle();
+            CommandScheduler.getInstance().run();
+            LoopProfiler.endCycle();
+        }
+        command.cancel();
+
+        assertEquals(executeCount + 3, execute.getHistogram().getCount());
+        assertEquals(endCount + 1, end.getHistogram().getCount());
+        assertEquals("Test Command", command.getName());
+    }
+
+    @Test
+    void profiledCommandFinishesTest() {
+        var command = new ProfiledCommand(new InstantCommand());
+        command.schedule();
+        CommandScheduler.getInstance().run();
+        assertTrue(!command.isScheduled());
+    }
+}
@@ -0,0 +1,151 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import frc.robot.Constants.SimulationConstants.MonteCarloConstants;
+import frc.robot.simulation.RobotSimulationHarness;
+import frc.robot.simulation.SimulationDisturbances;
+
+/**
+ * Runs an autonomous routine many times with random {@link SimulationDisturbances},
+ * to see how much the end pose and the time it takes spread out.
+ * <p>The first run has no disturbances, the end pose of every other run is compared to it.
+ * The runs are split between one JVM per core, see {@link ForkedSimulationRunner}.<p>
+ */
+public final class MonteCarloAutoEvaluator {
+    private MonteCarloAutoEvaluator() {}
+
+    /**
+     * The result of one run.
+     */
+    public static class Trial {
+        public final int index;
+        public final boolean finished;
+        public final double simulatedSeconds;
+        public final Pose2d finalPose;
+
+        Trial(int index, boolean finished, double simulatedSeconds, Pose2d finalPose) {
+            this.index = index;
+            this.finished = finished;
+            this.simulatedSeconds = simulatedSeconds;
+            this.finalPose = finalPose;
+        }
+
+        String serialize() {
+            return index + " " + finished + " " + simulatedSeconds + " "
+                + finalPose.getX() + " " + finalPose.getY() + " " + finalPose.getRotation().getRadians();
+        }
+
+        static Trial parse(String line) {
+            String[] parts = line.trim().split(" ");
+            return new Trial(
+                Integer.parseInt(parts[0]),
+                Boolean.parseBoolean(parts[1]),
+                Double.parseDouble(parts[2]),
+                new Pose2d(Double.parseDouble(parts[3]), Double.parseDouble(parts[4]),
+                    new Rotation2d(Double.parseDouble(parts[5]))));
+        }
+    }
+
+    /**
+     * Runs the routine and prints a report.
+     * <p>Usage: {@code MonteCarloAutoEvaluator <auto name> [trials] [seed]}<p>
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("--worker")) {
+            runWorker(args[1], Integer.parseInt(args[2]), Integer.parseInt(args[3]), Long.parseLong(args[4]));
+            System.exit(0);
+        }
+        String autoName = args[0];
+        int trials = args.length > 1 ? Integer.parseInt(args[1]) : MonteCarloConstants.kDefaultTrials;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : MonteCarloConstants.kDefaultSeed;
+        System.out.println(formatReport(autoName, evaluate(autoName, trials, seed)));
+    }
+
+    /**
+     * Runs the routine {@code trials} times, plus one run with no disturbances.
+     * @param autoName The name of the autonomous routine.
+     * @param trials How many disturbed runs to do.
+     * @param seed The seed the disturbances are made from, the same seed gives the same results.
+     * @return Every run, the undisturbed one first.
+     */
+    public static List<Trial> evaluate(String autoName, int trials, long seed) throws IOException, InterruptedException {
+        int totalRuns = trials + 1;
+        int workers = Math.min(ForkedSimulationRunner.getWorkerCount(), totalRuns);
+        List<List<String>> workerArgs = new ArrayList<>();
+        for (int worker = 0; worker < workers; worker++) {
+            int start = totalRuns * worker / workers;
+            int end = totalRuns * (worker + 1) / workers;
+            workerArgs.add(List.of("--worker", autoName, Integer.toString(start), Integer.toString(end - start), Long.toString(seed)));
+        }
+        List<Trial> results = new ArrayList<>();
+        for (String line : ForkedSimulationRunner.run(MonteCarloAutoEvaluator.class, workerArgs)) {
+            results.add(Trial.parse(line));
+        }
+        results.sort((a, b) -> Integer.compare(a.index, b.index));
+        return results;
+    }
+
+    private static void runWorker(String autoName, int start, int count, long seed) throws Exception {
+        for (int index = start; index < start + count; index++) {
+            var disturbances = index == 0 ? SimulationDisturbances.NONE : SimulationDisturbances.random(seed + index);
+            try (var harness = new RobotSimulationHarness(disturbances)) {
+                var result = harness.runAutonomous(autoName, MonteCarloConstants.kAutoTimeoutSeconds);
+                var trial = new Trial(index, result.finished, result.simulatedSeconds, result.finalPose);
+                System.out.println(ForkedSimulationRunner.kResultPrefix + trial.serialize());
+            }
+        }
+    }
+
+    /**
+     * Makes a report of how far each run ended from the undisturbed run, and how long they took.
+     * @param autoName The name of the autonomous routine.
+     * @param trials The runs, the undisturbed one first.
+     * @return The report.
+     */
+    public static String formatReport(String autoName, List<Trial> trials) {
+        Pose2d nominalPose = trials.get(0).finalPose;
+        int runs = trials.size() - 1;
+        double[] translationErrors = new double[runs];
+        double[] headingErrors = new double[runs];
+        double[] times = new double[runs];
+        int finished = 0;
+        for (int i = 0; i < runs; i++) {
+            var trial = trials.get(i + 1);
+            translationErrors[i] = trial.finalPose.getTranslation().getDistance(nominalPose.getTranslation());
+            headingErrors[i] = Math.abs(trial.finalPose.getRotation().minus(nominalPose.getRotation()).getDegrees());
+            times[i] = trial.simulatedSeconds;
+            if (trial.finished) finished++;
+        }
+        var report = new StringBuilder();
+        report.append("Monte Carlo results for ").append(autoName).append(" (").append(runs).append(" runs)\n");
+        report.append(String.format("Finished: %d/%d, undisturbed run took %.2fs%n", finished, runs, trials.get(0).simulatedSeconds));
+        report.append(String.format("%-24s %8s %8s %8s %8s %8s%n", "", "mean", "p50", "p90", "p99", "max"));
+        appendRow(report, "End position error (m)", translationErrors);
+        appendRow(report, "End heading error (deg)", headingErrors);
+        appendRow(report, "Time (s)", times);
+        return report.toString();
+    }
+
+    private static void appendRow(StringBuilder report, String name, double[] values) {
+        if (values.length == 0) return;
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        report.append(String.format("%-24s %8.3f %8.3f %8.3f %8.3f %8.3f%n", name,
+            Arrays.stream(sorted).average().orElse(0),
+            percentile(sorted, 0.5), percentile(sorted, 0.9), percentile(sorted, 0.99), sorted[sorted.length - 1]));
+    }
+
+    /**
+     * @param sorted The values, sorted.
+     * @param fraction Which percentile, 0.9 is the 90th.
+     * @return The nearest rank percentile.
+     */
+    static double percentile(double[] sorted, double fraction) {
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+}
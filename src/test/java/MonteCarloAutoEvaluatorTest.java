@@ -0,0 +1,28 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import frc.robot.simulation.SimulationDisturbances;
+
+public class MonteCarloAutoEvaluatorTest {
+    @Test
+    void sameSeedSameDisturbancesTest() {
+        var first = SimulationDisturbances.random(5);
+        var second = SimulationDisturbances.random(5);
+        assertEquals(first.leftWheelSlip, second.leftWheelSlip);
+        assertEquals(first.batteryVoltage, second.batteryVoltage);
+        assertEquals(first.gyroBiasDegreesPerSecond, second.gyroBiasDegreesPerSecond);
+        assertNotEquals(first.leftWheelSlip, SimulationDisturbances.random(6).leftWheelSlip);
+    }
+
+    @Test
+    void disturbancesInRangeTest() {
+        for (long seed = 0; seed < 100; seed++) {
+            var disturbances = SimulationDisturbances.random(seed);
+            assertTrue(disturbances.batteryVoltage > 10 && disturbances.batteryVoltage < 13);
+            assertTrue(disturbances.leftWheelSlip >= 0 && disturbances.leftWheelSlip < 0.1);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+import java.util.List;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import frc.robot.Constants.AutonomousConstants;
+import frc.robot.Constants.SimulationConstants.MonteCarloConstants;
+
+/**
+ * Not a real test, runs the Monte Carlo evaluation through gradle so the simulation native libraries are set up.
+ * Run it with {@code ./gradlew monteCarlo -Pauto="Timer Auto" -Ptrials=200}
+ */
+@Tag("tool")
+public class MonteCarloAutoTool {
+    @Test
+    void evaluateAuto() throws Exception {
+        String autoName = System.getProperty("auto", AutonomousConstants.kTimedAuto);
+        int trials = Integer.getInteger("trials", MonteCarloConstants.kDefaultTrials);
+        long seed = Long.getLong("seed", MonteCarloConstants.kDefaultSeed);
+        List<MonteCarloAutoEvaluator.Trial> results = MonteCarloAutoEvaluator.evaluate(autoName, trials, seed);
+        System.out.println(MonteCarloAutoEvaluator.formatReport(autoName, results));
+    }
+}
@@ -0,0 +1,64 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.simulation.SimHooks;
+import frc.robot.utils.PauseMonitor;
+
+public class PauseMonitorTest {
+    @BeforeEach
+    void setup() {
+        HAL.initialize(500, 0);
+        // The collectors report on the real clock, so the simulated one has to run with it.
+        SimHooks.resumeTiming();
+        PauseMonitor.install();
+        PauseMonitor.startMatch();
+    }
+
+    @Test
+    void correlationTest() {
+        // A 30 ms GC pause, far past anything the real collectors report so they can't get in the way.
+        double t = 1e6;
+        PauseMonitor.recordPause(t, 0.03);
+        // One overrun while it was paused, one much later.
+        PauseMonitor.recordOverrun(t + 0.01, t + 0.045);
+        PauseMonitor.recordOverrun(t + 100, t + 100.03);
+        // The fast loop missed 6 deadlines during the pause and 2 on its own.
+        PauseMonitor.recordMissedDeadlines(t, t + 0.03, 6);
+        PauseMonitor.recordMissedDeadlines(t + 200, t + 200.01, 2);
+
+        var report = PauseMonitor.getReport();
+        assertTrue(report.gcPauseSeconds >= 0.03);
+        assertEquals(2, report.overruns);
+        assertEquals(1, report.overrunsDuringGc);
+        assertEquals(8, report.missedDeadlines);
+        assertEquals(6, report.missedDeadlinesDuringGc);
+        assertEquals(0.75, report.getMissedDeadlineGcShare(), 1e-9);
+    }
+
+    @Test
+    void startMatchForgetsTest() {
+        PauseMonitor.recordOverrun(1, 1.03);
+        PauseMonitor.startMatch();
+        assertEquals(0, PauseMonitor.getReport().overruns);
+    }
+
+    @Test
+    void realGcIsSeenTest() throws InterruptedException {
+        double start = Timer.getFPGATimestamp();
+        System.gc();
+        // The collectors report from their own thread, give them a moment.
+        for (int i = 0; i < 50 && PauseMonitor.getReport().gcPauses == 0; i++) {
+            Thread.sleep(20);
+        }
+        var report = PauseMonitor.getReport();
+        assertTrue(report.gcPauses > 0);
+        // An overrun around the collection lines up with it on the FPGA clock.
+        PauseMonitor.recordOverrun(start, Timer.getFPGATimestamp());
+        assertEquals(1, PauseMonitor.getReport().overrunsDuringGc);
+    }
+}
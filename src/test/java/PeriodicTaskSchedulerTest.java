@@ -0,0 +1,87 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import frc.robot.utils.PeriodicTaskScheduler;
+import frc.robot.utils.PeriodicTaskScheduler.Priority;
+import frc.robot.utils.PeriodicTaskScheduler.Rate;
+import frc.robot.utils.PeriodicTaskScheduler.Task;
+
+public class PeriodicTaskSchedulerTest {
+    PeriodicTaskScheduler scheduler;
+    double time;
+
+    @BeforeEach
+    void setup() {
+        time = 0;
+        scheduler = new PeriodicTaskScheduler(() -> time);
+    }
+
+    void runFor(double seconds) {
+        double period = scheduler.getPeriodSeconds();
+        for (int i = 0; i < Math.round(seconds / period); i++) {
+            scheduler.run();
+            time += period;
+        }
+    }
+
+    @Test
+    void ratesTest() {
+        Task fast = scheduler.register("Fast", Rate.k1kHz, Priority.CRITICAL, () -> {});
+        Task control = scheduler.register("Control", Rate.k200Hz, Priority.CRITICAL, () -> {});
+        Task telemetry = scheduler.register("Telemetry", Rate.k10Hz, Priority.LOW, () -> {});
+        assertEquals(Rate.k1kHz.periodSeconds, scheduler.getPeriodSeconds());
+
+        runFor(1);
+        assertEquals(1000, fast.getRuns());
+        assertEquals(200, control.getRuns());
+        assertEquals(10, telemetry.getRuns());
+        assertEquals(0, control.getMissedDeadlines());
+    }
+
+    @Test
+    void priorityOrderTest() {
+        var order = new StringBuilder();
+        scheduler.register("Low", Rate.k200Hz, Priority.LOW, () -> order.append('L'));
+        scheduler.register("Critical", Rate.k200Hz, Priority.CRITICAL, () -> order.append('C'));
+        scheduler.register("Normal", Rate.k200Hz, Priority.NORMAL, () -> order.append('N'));
+        scheduler.run();
+        assertEquals("CNL", order.toString());
+        assertEquals("Critical", scheduler.getTasks().get(0).getName());
+    }
+
+    @Test
+    void overBudgetSkipsLowPriorityTest() {
+        // Takes longer than the whole frame.
+        Task slow = scheduler.register("Slow", Rate.k200Hz, Priority.CRITICAL, () -> busyWait(0.01));
+        Task normal = scheduler.register("Normal", Rate.k200Hz, Priority.NORMAL, () -> {});
+        Task low = scheduler.register("Low", Rate.k10Hz, Priority.LOW, () -> {});
+
+        runFor(0.1);
+        assertEquals(20, slow.getRuns());
+        assertEquals(0, normal.getRuns());
+        assertEquals(20, normal.getSkips());
+        assertEquals(1, low.getSkips());
+        assertEquals(20, scheduler.getOverBudgetFrames());
+        assertEquals(true, slow.getMaxSeconds() >= 0.01);
+    }
+
+    @Test
+    void missedDeadlinesTest() {
+        Task control = scheduler.register("Control", Rate.k200Hz, Priority.CRITICAL, () -> {});
+        runFor(0.05);
+        // The main loop held the thread for 22 ms, four runs were missed.
+        time += 0.022;
+        runFor(0.05);
+        assertEquals(4, control.getMissedDeadlines());
+        assertEquals(20, control.getRuns());
+    }
+
+    static void busyWait(double seconds) {
+        long end = System.nanoTime() + (long) (seconds * 1e9);
+        while (System.nanoTime() < end) {
+            Thread.onSpinWait();
+        }
+    }
+}
@@ -33,6 +33,7 @@ class PhotonVisionTest {
     @AfterEach
     void tearDown() throws Exception {
         simVisionSystem.clearVisionTargets();
+        photonCameraSystem.close();
     }
 
 
@@ -0,0 +1,80 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.wpilibj.AnalogInput;
+import edu.wpi.first.wpilibj.DigitalInput;
+import edu.wpi.first.wpilibj.Encoder;
+import edu.wpi.first.wpilibj.simulation.AnalogInputSim;
+import edu.wpi.first.wpilibj.simulation.DIOSim;
+import edu.wpi.first.wpilibj.simulation.EncoderSim;
+import frc.robot.subsystems.SensorSampleBuffer;
+import frc.robot.subsystems.SensorSampler;
+
+public class SensorSamplerTest {
+    static final double DELTA = 1e-6;
+    // Channels the robot doesn't use, so this doesn't clash with the subsystems.
+    Encoder leftEncoder;
+    Encoder rightEncoder;
+    AnalogInput pot;
+    DigitalInput limitSwitch;
+    SensorSampler sampler;
+
+    @BeforeEach
+    void setup() {
+        HAL.initialize(500, 0);
+        leftEncoder = new Encoder(10, 11);
+        rightEncoder = new Encoder(12, 13);
+        pot = new AnalogInput(3);
+        limitSwitch = new DigitalInput(14);
+        sampler = new SensorSampler(leftEncoder, rightEncoder, pot, limitSwitch);
+    }
+
+    @AfterEach
+    void tearDown() {
+        sampler.close();
+        leftEncoder.close();
+        rightEncoder.close();
+        pot.close();
+        limitSwitch.close();
+    }
+
+    @Test
+    void bufferKeepsNewestFirstTest() {
+        var buffer = new SensorSampleBuffer(4);
+        assertTrue(buffer.isEmpty());
+        for (int i = 0; i < 6; i++) {
+            buffer.add(i, i, -i, i * 0.5, i % 2);
+        }
+        assertEquals(4, buffer.size());
+        assertEquals(6, buffer.getTotalSamples());
+        assertEquals(5, buffer.getTimestamp(0), DELTA);
+        assertEquals(-4, buffer.getRightDistance(1), DELTA);
+        assertEquals(2, buffer.getLeftDistance(3), DELTA);
+        assertTrue(buffer.getDigitalInput(0, 0));
+        assertFalse(buffer.getDigitalInput(1, 0));
+        assertThrows(IndexOutOfBoundsException.class, () -> buffer.getTimestamp(4));
+    }
+
+    @Test
+    void simulatedSamplesReadTheSensorsTest() {
+        // There is no DMA engine in simulation, the sensors are read directly.
+        assertFalse(sampler.isUsingDma());
+        new EncoderSim(leftEncoder).setDistance(1.5);
+        new EncoderSim(rightEncoder).setDistance(2.5);
+        new AnalogInputSim(pot).setVoltage(3.3);
+        new DIOSim(limitSwitch).setValue(false);
+        assertEquals(1, sampler.poll());
+        var buffer = sampler.getBuffer();
+        assertEquals(1.5, buffer.getLeftDistance(0), DELTA);
+        assertEquals(2.5, buffer.getRightDistance(0), DELTA);
+        assertEquals(3.3, buffer.getPotVoltage(0), 0.01);
+        assertFalse(buffer.getDigitalInput(0, 0));
+    }
+}
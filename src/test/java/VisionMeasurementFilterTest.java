@@ -0,0 +1,74 @@
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import frc.robot.subsystems.AprilTagFieldCache;
+import frc.robot.subsystems.VisionMeasurementFilter;
+
+public class VisionMeasurementFilterTest {
+    VisionMeasurementFilter filter;
+    double[] stdDevs;
+    double tagX;
+    double tagY;
+
+    @BeforeEach
+    void setup() {
+        AprilTagFieldCache.getLayout();
+        filter = new VisionMeasurementFilter(1.0);
+        stdDevs = new double[3];
+        tagX = AprilTagFieldCache.getTagX(1);
+        tagY = AprilTagFieldCache.getTagY(1);
+    }
+
+    @Test
+    void closeSingleTagTest() {
+        assertTrue(filter.calculateStdDevs(tagX - 2, tagY, 0, new int[] {1}, 1, 0.05, tagX - 2, tagY, stdDevs));
+    }
+
+    @Test
+    void multiTagTrustedMoreTest() {
+        double[] multiStdDevs = new double[3];
+        assertTrue(filter.calculateStdDevs(tagX - 2, tagY, 0, new int[] {1}, 1, 0.05, tagX - 2, tagY, stdDevs));
+        assertTrue(filter.calculateStdDevs(tagX - 2, tagY, 0, new int[] {1, 2}, 2, 0.05, tagX - 2, tagY, multiStdDevs));
+        for (int i = 0; i < 3; i++) {
+            assertTrue(multiStdDevs[i] < stdDevs[i]);
+        }
+    }
+
+    @Test
+    void distanceLowersTrustTest() {
+        double[] farStdDevs = new double[3];
+        assertTrue(filter.calculateStdDevs(tagX - 1, tagY, 0, new int[] {1, 2}, 2, 0, tagX - 1, tagY, stdDevs));
+        assertTrue(filter.calculateStdDevs(tagX - 5, tagY, 0, new int[] {1, 2}, 2, 0, tagX - 5, tagY, farStdDevs));
+        assertTrue(farStdDevs[0] > stdDevs[0]);
+    }
+
+    @Test
+    void rejectBadPosesTest() {
+        // Off the field
+        assertFalse(filter.calculateStdDevs(-3, tagY, 0, new int[] {1, 2}, 2, 0, -3, tagY, stdDevs));
+        // In the air
+        assertFalse(filter.calculateStdDevs(tagX - 2, tagY, 1.5, new int[] {1, 2}, 2, 0, tagX - 2, tagY, stdDevs));
+        // Ambiguous single tag
+        assertFalse(filter.calculateStdDevs(tagX - 2, tagY, 0, new int[] {1}, 1, 0.5, tagX - 2, tagY, stdDevs));
+        // Far away single tag
+        assertFalse(filter.calculateStdDevs(tagX - 6, tagY, 0, new int[] {1}, 1, 0.05, tagX - 6, tagY, stdDevs));
+        // Unknown tag
+        assertFalse(filter.calculateStdDevs(tagX - 2, tagY, 0, new int[] {42}, 1, 0.05, tagX - 2, tagY, stdDevs));
+    }
+
+    @Test
+    void poseJumpTest() {
+        // One tag can't move us far, but multiple tags can.
+        assertFalse(filter.calculateStdDevs(tagX - 2, tagY, 0, new int[] {1}, 1, 0.05, tagX - 4, tagY, stdDevs));
+        assertTrue(filter.calculateStdDevs(tagX - 2, tagY, 0, new int[] {1, 2}, 2, 0.05, tagX - 4, tagY, stdDevs));
+    }
+
+    @Test
+    void singleTagWithoutReferenceTest() {
+        // Before we know where we are, a single tag far from the origin is still taken.
+        assertTrue(filter.calculateStdDevs(tagX - 2, tagY, 0, new int[] {1}, 1, 0.05, Double.NaN, Double.NaN, stdDevs));
+    }
+}
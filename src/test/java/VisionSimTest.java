@@ -0,0 +1,118 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.simulation.SimHooks;
+import frc.robot.Constants.PhotonVisionConstants;
+import frc.robot.Constants.SimulationConstants.VisionSimConstants;
+import frc.robot.simulation.VisionSim;
+import frc.robot.subsystems.AprilTagFieldCache;
+import frc.robot.subsystems.PhotonCameraSystem;
+
+class VisionSimTest {
+    PhotonCameraSystem photonCameraSystem;
+    VisionSim visionSim;
+    Pose2d robotPose;
+    double startTime;
+
+    @BeforeEach
+    void setup() {
+        HAL.initialize(500, 0);
+        SimHooks.pauseTiming();
+        photonCameraSystem = new PhotonCameraSystem(new PhotonVisionConstants.New_PiCamera());
+        // Two meters in front of tag 1, facing it.
+        AprilTagFieldCache.getLayout();
+        robotPose = new Pose2d(AprilTagFieldCache.getTagX(1) - 2, AprilTagFieldCache.getTagY(1), new Rotation2d());
+        startTime = Timer.getFPGATimestamp();
+        visionSim = new VisionSim(() -> robotPose, new PhotonVisionConstants.New_PiCamera());
+    }
+
+    @AfterEach
+    void tearDown() {
+        photonCameraSystem.close();
+        SimHooks.resumeTiming();
+    }
+
+    @Test
+    void seesTagAfterLatencyTest() {
+        visionSim.update();
+        assertFalse(photonCameraSystem.getLatestResult().hasTargets());
+        for (int i = 0; i < 5; i++) {
+            SimHooks.stepTiming(0.02);
+            visionSim.update();
+        }
+        assertEquals(1, photonCameraSystem.getCurrentAprilTagID());
+    }
+
+    @Test
+    void timestampIsCaptureTimeTest() {
+        visionSim.update();
+        for (int i = 0; i < 50 && !photonCameraSystem.getLatestResult().hasTargets(); i++) {
+            SimHooks.stepTiming(0.02);
+            visionSim.update();
+        }
+        var result = photonCameraSystem.getLatestResult();
+        assertTrue(result.hasTargets());
+        // The first frame is taken when the sim starts, and only published once the latency has gone by.
+        assertEquals(startTime, result.getTimestampSeconds(), 1e-3);
+        assertTrue(result.getLatencyMillis() >= VisionSimConstants.kLatencySeconds * 1000 - 1e-3);
+    }
+
+    @Test
+    void frameKeepsItsSequenceTest() {
+        var first = photonCameraSystem.getLatestFrame();
+        // Nothing new was published, so it's the same frame.
+        assertEquals(first.sequence, photonCameraSystem.getLatestFrame().sequence);
+        for (int i = 0; i < 5; i++) {
+            SimHooks.stepTiming(0.02);
+            visionSim.update();
+        }
+        var frame = photonCameraSystem.getLatestFrame();
+        assertTrue(frame.sequence > first.sequence);
+        assertTrue(frame.result.hasTargets());
+        assertEquals(frame.sequence, photonCameraSystem.getResultSequence());
+    }
+
+    @Test
+    void frameRateTest() {
+        int startSequence = photonCameraSystem.getResultSequence();
+        // One second of 50Hz loops.
+        for (int i = 0; i < 50; i++) {
+            SimHooks.stepTiming(0.02);
+            visionSim.update();
+        }
+        int frames = photonCameraSystem.getResultSequence() - startSequence;
+        // Frames can only come out on a loop, so at 30fps some loops publish two and we only decode the last one.
+        assertTrue(frames > 0 && frames <= VisionSimConstants.kFps);
+    }
+
+    @Test
+    void synchronousProcessingTest() {
+        photonCameraSystem.useSynchronousProcessing();
+        photonCameraSystem.setReferencePose(robotPose, true);
+        // Wait for the first frame to come out, nothing is estimated until we process it.
+        for (int i = 0; i < 50 && !photonCameraSystem.getLatestResult().hasTargets(); i++) {
+            SimHooks.stepTiming(0.02);
+            visionSim.update();
+        }
+        assertNull(photonCameraSystem.pollMeasurement());
+        photonCameraSystem.processNewFrame();
+        var measurement = photonCameraSystem.pollMeasurement();
+        assertNotNull(measurement);
+        assertEquals(robotPose.getX(), measurement.pose.getX(), 0.2);
+        assertEquals(robotPose.getY(), measurement.pose.getY(), 0.2);
+        // The same frame isn't estimated twice.
+        photonCameraSystem.processNewFrame();
+        assertNull(photonCameraSystem.pollMeasurement());
+    }
+}
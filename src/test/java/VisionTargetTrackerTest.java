@@ -0,0 +1,55 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import frc.robot.Constants.PhotonVisionConstants.TrackerConstants;
+import frc.robot.subsystems.VisionTargetTracker;
+
+public class VisionTargetTrackerTest {
+    static final double DELTA = 1e-6;
+    VisionTargetTracker tracker;
+
+    @BeforeEach
+    void setup() {
+        tracker = new VisionTargetTracker();
+    }
+
+    @Test
+    void predictsYawFromTurnTest() {
+        tracker.addObservation(1.0, 10, 2, 30);
+        // Turned 4 degrees clockwise towards the target since the frame.
+        assertEquals(6, tracker.getPredictedYaw(34), DELTA);
+        // Turned away from it.
+        assertEquals(15, tracker.getPredictedYaw(25), DELTA);
+    }
+
+    @Test
+    void smoothsAreaTest() {
+        tracker.addObservation(1.0, 0, 2, 0);
+        assertEquals(2, tracker.getArea(), DELTA);
+        tracker.addObservation(1.02, 0, 4, 0);
+        assertTrue(tracker.getArea() > 2 && tracker.getArea() < 4);
+    }
+
+    @Test
+    void ignoresOldFramesTest() {
+        tracker.addObservation(1.0, 5, 2, 0);
+        tracker.addObservation(1.0, 20, 8, 0);
+        tracker.addObservation(0.9, 20, 8, 0);
+        assertEquals(5, tracker.getPredictedYaw(0), DELTA);
+        assertEquals(2, tracker.getArea(), DELTA);
+    }
+
+    @Test
+    void losesTargetTest() {
+        assertFalse(tracker.hasTarget(0));
+        tracker.addObservation(1.0, 0, 2, 0);
+        assertTrue(tracker.hasTarget(1.0 + TrackerConstants.kTargetTimeoutSeconds / 2));
+        assertFalse(tracker.hasTarget(1.0 + TrackerConstants.kTargetTimeoutSeconds * 2));
+        tracker.reset();
+        assertFalse(tracker.hasTarget(1.0));
+    }
+}
@@ -0,0 +1,82 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import frc.robot.Constants.DriveConstants.WheelSlipConstants;
+import frc.robot.subsystems.WheelSlipDetector;
+import frc.robot.subsystems.WheelSlipDetector.State;
+
+public class WheelSlipDetectorTest {
+    static final double trackwidth = 0.7;
+    static final double dt = 0.005;
+    WheelSlipDetector detector;
+    double time;
+
+    @BeforeEach
+    void setup() {
+        detector = new WheelSlipDetector(trackwidth);
+        time = 0;
+    }
+
+    State step(double leftVelocity, double rightVelocity, double gyroRate, double accel) {
+        time += dt;
+        return detector.update(time, leftVelocity, rightVelocity, gyroRate, accel);
+    }
+
+    @Test
+    void turningWithGripTest() {
+        // Turning counterclockwise at 1 rad/s, the gyro agrees.
+        double gyroRate = -Math.toDegrees(1);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(State.GRIP, step(1 - trackwidth / 2, 1 + trackwidth / 2, gyroRate, 0));
+        }
+        assertEquals(1, detector.getOdometryWeight());
+    }
+
+    @Test
+    void spinningWheelsAreSlipTest() {
+        step(0, 0, 0, 0);
+        // One side spins on the charge station, the gyro says we didn't turn.
+        assertEquals(State.SLIP, step(0, 2, 0, 0));
+        assertEquals(WheelSlipConstants.kSlipOdometryWeight, detector.getOdometryWeight());
+        // It holds for a while after the wheels stop slipping.
+        for (double t = 0; t < WheelSlipConstants.kHoldSeconds - 2 * dt; t += dt) {
+            assertEquals(State.SLIP, step(0, 0, 0, 0));
+        }
+        for (int i = 0; i < 5; i++) step(0, 0, 0, 0);
+        assertEquals(State.GRIP, detector.getState());
+    }
+
+    @Test
+    void wheelsSpeedingUpAloneAreSlipTest() {
+        double velocity = 0;
+        State state = State.GRIP;
+        // The wheels speed up at 20 m/s^2, the accelerometer barely moves.
+        for (int i = 0; i < 20 && state == State.GRIP; i++) {
+            velocity += 20 * dt;
+            state = step(velocity, velocity, 0, 0.5);
+        }
+        assertEquals(State.SLIP, state);
+    }
+
+    @Test
+    void hitIsCollisionTest() {
+        for (int i = 0; i < 10; i++) step(1, 1, 0, 0);
+        // A sudden -4 g the encoders don't see.
+        assertEquals(State.COLLISION, step(1, 1, 0, -40));
+        assertEquals(0, detector.getOdometryWeight());
+        assertEquals(WheelSlipConstants.kSlipVisionStdDevScale, detector.getVisionStdDevScale());
+    }
+
+    @Test
+    void hardBrakingIsNotCollisionTest() {
+        double velocity = 3;
+        for (int i = 0; i < 10; i++) step(velocity, velocity, 0, 0);
+        // Braking at 5 m/s^2, the encoders and the accelerometer agree.
+        for (int i = 0; i < 100 && velocity > 0; i++) {
+            velocity -= 5 * dt;
+            assertEquals(State.GRIP, step(velocity, velocity, 0, -5));
+        }
+    }
+}